@@ -0,0 +1,179 @@
+import java.util.Arrays;
+
+/*
+ * A PackedEngine that only recomputes the parts of the board that can change.
+ *
+ * The board is split into tiles of TILE_ROWS rows by one word (64 columns). For every tile two flags are kept:
+ * changed1, whether it differs between the two buffers (the current and the previous generation), and changed2,
+ * whether the generation just computed differs from the one two generations back. A tile is skipped when
+ *  - no tile in its 3 by 3 neighbourhood changed1 (a still life), so the next generation is the current one, or
+ *  - no tile in its neighbourhood changed2 (a period 2 oscillator such as a blinker), so the next generation is
+ *    the previous one.
+ * In both cases the previous generation buffer, which becomes the next generation, already holds the right cells,
+ * so a skipped tile costs nothing but the flag checks. The number of cells each tile changed is kept as well,
+ * since a skipped period 2 tile changes as many cells as it did in the generation before. So is each tile's part
+ * of the hash (see Zobrist), for both buffers, so a skipped tile needs no hashing either.
+ * Editing a cell breaks the assumption that the previous generation buffer holds the generation before, so an
+ * edited tile is not treated as period 2 until it has been recomputed twice.
+ */
+public class ActiveEngine extends PackedEngine {
+
+    static final int TILE_ROWS = 64;  // Rows per tile, a tile is one word wide
+
+    private final int tileRows;        // The number of rows of tiles, the last one may be short
+    private boolean[] changed1;        // changed1[t] is true if tile t differs between the current and previous generation
+    private boolean[] changed2;        // changed2[t] is true if tile t differs between the current generation and two back
+    private boolean[] nextChanged1;    // The flags of the generation being computed, swapped like the boards
+    private boolean[] nextChanged2;
+    private boolean[] edited;          // edited[t] is true if a cell in tile t was set since it was last recomputed
+    private int[] changes;             // changes[t] is the number of cells in tile t that changed in the last step
+    private int[] nextChanges;
+    private long[] sums;               // sums[t] is the hash of tile t without its column key, see Zobrist
+    private long[] nextSums;           // The same for the previous generation buffer, swapped like the boards
+    private int skippedTiles;          // The number of tiles skipped in the last step
+
+
+    public ActiveEngine(int rows, int columns) {
+        super(rows, columns);
+        tileRows = (rows + TILE_ROWS - 1) / TILE_ROWS;
+        changed1 = new boolean[tileRows * words];
+        changed2 = new boolean[tileRows * words];
+        nextChanged1 = new boolean[tileRows * words];
+        nextChanged2 = new boolean[tileRows * words];
+        edited = new boolean[tileRows * words];
+        changes = new int[tileRows * words];
+        nextChanges = new int[tileRows * words];
+        sums = new long[tileRows * words];
+        nextSums = new long[tileRows * words];
+        markAll();
+    }
+
+    // Return the number of tiles the board is split into
+    public int getTileCount() {
+        return changed1.length;
+    }
+
+    // Return the number of tiles that were not recomputed in the last step
+    public int getSkippedTiles() {
+        return skippedTiles;
+    }
+
+    public void setAlive(int row, int col, boolean alive) {
+        int i = row * words + (col >>> 6);
+        long old = cells[i];
+        super.setAlive(row, col, alive);
+        int t = (row / TILE_ROWS) * words + (col >>> 6);
+        sums[t] += rowKeys[row] * (Zobrist.spread(cells[i]) - Zobrist.spread(old));
+        changed1[t] = true;   // The tile and its neighbours are recomputed in the next step
+        changed2[t] = true;
+        edited[t] = true;
+    }
+
+    public void clear() {
+        super.clear();
+        Arrays.fill(sums, 0L);
+        markAll();
+    }
+
+    public void setRule(Rule rule) {
+        super.setRule(rule);
+        markAll();  // What was still under the old rule may not be under the new one
+    }
+
+    public void copyFrom(long[] packed) {
+        super.copyFrom(packed);
+        Arrays.fill(sums, 0L);
+        for (int r = 0; r < rows; r++)
+            for (int w = 0; w < words; w++)
+                sums[(r / TILE_ROWS) * words + w] += rowKeys[r] * Zobrist.spread(cells[r * words + w]);
+        markAll();
+    }
+
+    public void step() {
+        int skipped = 0;
+        long changed = 0;
+        long hashChange = 0;
+        for (int tr = 0; tr < tileRows; tr++) {
+            int above = tr > 0 ? tr - 1 : tileRows - 1;  // Tiles wrap around like the cells
+            int below = tr < tileRows - 1 ? tr + 1 : 0;
+            for (int tc = 0; tc < words; tc++) {
+                int t = tr * words + tc;
+                if (quiet(changed1, above, tr, below, tc)) {
+                    nextChanged1[t] = false;        // Still life, both buffers already hold it
+                    nextChanged2[t] = false;
+                    nextChanges[t] = 0;
+                    nextSums[t] = sums[t];
+                    skipped++;
+                } else if (quiet(changed2, above, tr, below, tc)) {
+                    nextChanged1[t] = changed1[t];  // Period 2, the previous generation comes back
+                    nextChanged2[t] = false;
+                    nextChanges[t] = changes[t];    // nextSums[t] already holds the previous generation's
+                    skipped++;
+                } else {
+                    stepTile(t, tr, tc);
+                }
+                changed += nextChanges[t];
+                hashChange += (nextSums[t] - sums[t]) * columnKeys[tc];
+            }
+        }
+        skippedTiles = skipped;
+        changedCells = changed;
+        hash += hashChange;
+
+        long[] old = cells; // Swap the boards and the flags
+        cells = next;
+        next = old;
+        boolean[] flags = changed1;
+        changed1 = nextChanged1;
+        nextChanged1 = flags;
+        flags = changed2;
+        changed2 = nextChanged2;
+        nextChanged2 = flags;
+        int[] counts = changes;
+        changes = nextChanges;
+        nextChanges = counts;
+        long[] tileSums = sums;
+        sums = nextSums;
+        nextSums = tileSums;
+    }
+
+
+    // Compute the next generation of one tile and record how it changed
+    private void stepTile(int t, int tr, int tc) {
+        int changed = 0;
+        long sum = 0;
+        boolean differs2 = false;
+        int last = Math.min(rows, (tr + 1) * TILE_ROWS);
+        for (int r = tr * TILE_ROWS; r < last; r++) {
+            int above = (r > 0 ? r - 1 : rows - 1) * words;
+            int below = (r < rows - 1 ? r + 1 : 0) * words;
+            int i = r * words + tc;
+            long word = stepWord(cells, above, r * words, below, tc, words, columns, rule);
+            changed += Long.bitCount(word ^ cells[i]);
+            sum += Zobrist.spread(word) * rowKeys[r];
+            differs2 |= word != next[i];
+            next[i] = word;
+        }
+        nextChanged1[t] = changed != 0;
+        nextChanges[t] = changed;
+        nextSums[t] = sum;
+        nextChanged2[t] = differs2 || edited[t];  // The previous generation buffer holds the edited cells
+        edited[t] = false;
+    }
+
+    // Return true if none of the nine tiles around tile row tr, column tc has its flag set
+    private boolean quiet(boolean[] flags, int above, int tr, int below, int tc) {
+        int left = tc > 0 ? tc - 1 : words - 1;
+        int right = tc < words - 1 ? tc + 1 : 0;
+        return !(flags[above * words + left] || flags[above * words + tc] || flags[above * words + right]
+                || flags[tr * words + left] || flags[tr * words + tc] || flags[tr * words + right]
+                || flags[below * words + left] || flags[below * words + tc] || flags[below * words + right]);
+    }
+
+    // Recompute every tile in the next step
+    private void markAll() {
+        Arrays.fill(changed1, true);
+        Arrays.fill(changed2, true);
+        Arrays.fill(edited, true);
+    }
+}
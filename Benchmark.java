@@ -0,0 +1,403 @@
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/*
+ * A quick smoke run of the stepping, rendering and I/O paths over a grid of parameters: every case starts from a
+ * fresh random board, is warmed up, and then timed over several fixed-length iterations, reporting the mean and
+ * standard deviation of the iterations together with the bytes allocated per operation (on all threads, so the
+ * ForkJoinPool workers of the parallel engine are counted, but so is anything else the JVM was doing).
+ *
+ * It runs in the same JVM with no forking and no blackholes, so its numbers are for spotting large changes quickly.
+ * The JMH benchmarks in jmh/ measure the same cases properly (see pom.xml); they reach them through the public
+ * stepCase, renderCase and ioCase below, by reflection, since JMH benchmarks can not be in the default package.
+ *
+ *   step     generations per second, and cells per second, of each engine, size, density and rule
+ *   render   frames per second of Panel drawing an 800 by 800 view of the board, alternating between two generations
+ *   save     checkpoints written per second (Checkpoint.write), and bytes per second
+ *   load     checkpoints read per second (Checkpoint.read), and bytes per second
+ *   pattern  RLE files of the board read per second (PatternReader into a packed engine), and bytes per second
+ *
+ * Usage: java Benchmark [options]
+ *   --engines A,B       engines to step (default naive,packed,parallel,active,vector)
+ *   --sizes A,B         board sizes, n for an n by n board (default 100,1024,4096,8192,16384; run with -Xmx4g)
+ *   --densities A,B     fractions of cells alive at the start (default 0.10,0.35)
+ *   --rules A,B         rules to step with (default B3/S23,B36/S23)
+ *   --only A,B          only run these of step, render, save, load, pattern (default all)
+ *   --warmup N          warm up iterations (default 2)
+ *   --iterations N      measured iterations (default 5)
+ *   --time MS           length of each iteration in milliseconds (default 500)
+ *   --label TEXT        recorded with every result, for example the commit being measured
+ *   --json FILE         also write the results to FILE as JSON
+ */
+public class Benchmark {
+
+    private static int warmup = 2;
+    private static int iterations = 5;
+    private static long iterationNanos = 500_000_000L;
+    private static final Random RANDOM = new Random(42);   // The same boards on every run
+
+    // The result of one case
+    private static final class Result {
+        String benchmark;   // step, render, save, load or pattern
+        String engine;      // Only for step
+        String rule;        // Only for step
+        int size;
+        double density;
+        double score;       // Mean operations per second
+        double error;       // Standard deviation of the iterations
+        String unit;        // What an operation is
+        double perSecond;   // Cells or bytes per second
+        String perSecondUnit;
+        double bytesPerOp;  // Allocated bytes per operation
+    }
+
+    private static final List<Result> results = new ArrayList<>();
+
+
+    public static void main(String[] args) throws IOException {
+        String[] engines = {"naive", "packed", "parallel", "active", "vector"};
+        String[] sizes = {"100", "1024", "4096", "8192", "16384"};
+        String[] densities = {"0.10", "0.35"};
+        String[] rules = {"B3/S23", "B36/S23"};
+        List<String> only = List.of("step", "render", "save", "load", "pattern");
+        String label = "";
+        String json = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--engines":
+                    engines = args[++i].split(",");
+                    break;
+                case "--sizes":
+                    sizes = args[++i].split(",");
+                    break;
+                case "--densities":
+                    densities = args[++i].split(",");
+                    break;
+                case "--rules":
+                    rules = args[++i].split(",");
+                    break;
+                case "--only":
+                    only = List.of(args[++i].split(","));
+                    break;
+                case "--warmup":
+                    warmup = Integer.parseInt(args[++i]);
+                    break;
+                case "--iterations":
+                    iterations = Integer.parseInt(args[++i]);
+                    break;
+                case "--time":
+                    iterationNanos = Long.parseLong(args[++i]) * 1_000_000L;
+                    break;
+                case "--label":
+                    label = args[++i];
+                    break;
+                case "--json":
+                    json = args[++i];
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        if (List.of(engines).contains("vector") && !VectorEngine.isVectorised()) {
+            System.out.println("Skipping vector, which would step with the scalar loop of packed: " + VectorEngine.describe());
+            engines = List.of(engines).stream().filter(e -> !e.equals("vector")).toArray(String[]::new);
+        }
+        System.out.printf("%-8s %-10s %-13s %6s %7s %14s %10s %-13s %-15s %12s%n",
+                "Case", "Engine", "Rule", "Size", "Density", "Score", "Error", "Unit", "Throughput", "Alloc/op");
+        for (String sizeText : sizes) {
+            int size = Integer.parseInt(sizeText.trim());
+            for (String densityText : densities) {
+                double density = Double.parseDouble(densityText.trim());
+                if (only.contains("step"))
+                    for (String engine : engines)
+                        for (String rule : rules)
+                            step(engine.trim(), Rule.parse(rule), size, density);
+                if (only.contains("render"))
+                    render(size, density);
+                if (only.contains("save") || only.contains("load") || only.contains("pattern"))
+                    io(size, density, only);
+            }
+        }
+
+        if (json != null)
+            writeJson(Paths.get(json), label);
+    }
+
+
+    /*
+     * One generation of the named engine, from a random board. Throws IllegalStateException for "vector" without its
+     * kernel, rather than measuring the scalar loop of packed under its name.
+     */
+    public static Runnable stepCase(String name, String rule, int size, double density) {
+        if (name.equals("vector") && !VectorEngine.isVectorised())
+            throw new IllegalStateException("The vector kernel is not loaded: " + VectorEngine.describe());
+        Engine engine = Engine.create(name, size, size);
+        engine.setRule(Rule.parse(rule));
+        randomise(engine, density);
+        return engine::step;
+    }
+
+    /*
+     * Show the next of two generations of a random board in an 800 by 800 Panel fitted to the view, so every frame has
+     * cells that changed, and paint it into an image.
+     */
+    public static Runnable renderCase(int size, double density) {
+        Engine engine = Engine.create("packed", size, size);
+        randomise(engine, density);
+        int words = (size + 63) >>> 6;
+        long[][] frames = new long[2][size * words];
+        engine.copyTo(frames[0]);
+        engine.step();
+        engine.copyTo(frames[1]);
+
+        Panel panel = new Panel(size, size, 1, 1);
+        panel.setSize(800, 800);
+        Graphics g = new BufferedImage(800, 800, BufferedImage.TYPE_INT_RGB).getGraphics();
+        int[] next = {0};
+        return () -> {
+            panel.showCells(frames[next[0]]);
+            panel.paintComponent(g);
+            next[0] ^= 1;
+        };
+    }
+
+    /*
+     * Write a checkpoint of a random board to board.golc in the directory ("save"), read it back ("load"), or read
+     * the board as an RLE pattern from board.rle into a packed engine ("pattern"). The files are made first and left
+     * in the directory; the result of the call is what was read, if anything.
+     */
+    public static Callable<Object> ioCase(String benchmark, int size, double density, Path directory) throws IOException {
+        Engine engine = Engine.create("packed", size, size);
+        randomise(engine, density);
+        Checkpoint checkpoint = new Checkpoint(size, size);
+        checkpoint.capture(new Simulation(engine));
+        Path file = directory.resolve("board.golc");
+        Path rle = directory.resolve("board.rle");
+        checkpoint.write(file);
+        switch (benchmark) {
+            case "save":
+                return () -> {
+                    checkpoint.write(file);
+                    return null;
+                };
+            case "load":
+                return () -> Checkpoint.read(file);
+            case "pattern":
+                writeRle(engine, rle);
+                PatternReader.Sink sink = PatternReader.into(Engine.create("packed", size, size));
+                return () -> PatternReader.read(rle, 0, 0, sink);
+            default:
+                throw new IllegalArgumentException("Unknown I/O benchmark: " + benchmark);
+        }
+    }
+
+
+    // Generations per second of the engine
+    private static void step(String name, Rule rule, int size, double density) {
+        Result result = measure(stepCase(name, rule.toString(), size, density));
+        result.benchmark = "step";
+        result.engine = name;
+        result.rule = rule.toString();
+        result.unit = "generations/s";
+        result.perSecond = result.score * size * size;
+        result.perSecondUnit = "cells/s";
+        report(result, size, density);
+    }
+
+    // Frames per second of an 800 by 800 Panel showing the board fitted to the view
+    private static void render(int size, double density) {
+        Result result = measure(renderCase(size, density));
+        result.benchmark = "render";
+        result.unit = "frames/s";
+        result.perSecond = result.score * size * size;
+        result.perSecondUnit = "cells/s";
+        report(result, size, density);
+    }
+
+    // Checkpoints written and read, and RLE patterns read, per second
+    private static void io(int size, double density, List<String> only) throws IOException {
+        Path directory = Files.createTempDirectory("benchmark");
+        try {
+            for (String benchmark : new String[]{"save", "load", "pattern"}) {
+                if (!only.contains(benchmark))
+                    continue;
+                Callable<Object> op = ioCase(benchmark, size, density, directory);
+                long bytes = Files.size(directory.resolve(benchmark.equals("pattern") ? "board.rle" : "board.golc"));
+                reportIo(benchmark, measureIo(op), bytes, size, density);
+            }
+        } finally {
+            Files.deleteIfExists(directory.resolve("board.golc"));
+            Files.deleteIfExists(directory.resolve("board.rle"));
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private static Result measureIo(Callable<Object> op) {
+        return measure(() -> {
+            try {
+                op.call();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    private static void reportIo(String benchmark, Result result, long bytes, int size, double density) {
+        result.benchmark = benchmark;
+        result.unit = "files/s";
+        result.perSecond = result.score * bytes;
+        result.perSecondUnit = "bytes/s";
+        report(result, size, density);
+    }
+
+
+    /*
+     * Run op for the warm up iterations, then for the measured ones, each as many times as fits in iterationNanos
+     * (at least once). The score is the mean of the operations per second of the measured iterations.
+     */
+    private static Result measure(Runnable op) {
+        for (int i = 0; i < warmup; i++)
+            runFor(op);
+        double[] rates = new double[iterations];
+        long operations = 0;
+        long allocated = allocatedBytes();
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            long n = runFor(op);
+            rates[i] = n / ((System.nanoTime() - start) / 1e9);
+            operations += n;
+        }
+        allocated = allocatedBytes() - allocated;
+
+        Result result = new Result();
+        double sum = 0;
+        for (double rate : rates)
+            sum += rate;
+        result.score = sum / iterations;
+        double squares = 0;
+        for (double rate : rates)
+            squares += (rate - result.score) * (rate - result.score);
+        result.error = iterations > 1 ? Math.sqrt(squares / (iterations - 1)) : 0;
+        result.bytesPerOp = operations > 0 ? (double) allocated / operations : 0;
+        return result;
+    }
+
+    // Run op until iterationNanos have passed and return how many times it ran
+    private static long runFor(Runnable op) {
+        long start = System.nanoTime();
+        long n = 0;
+        do {
+            op.run();
+            n++;
+        } while (System.nanoTime() - start < iterationNanos);
+        return n;
+    }
+
+    // Bytes allocated so far by all live threads, or 0 if the JVM does not count them
+    private static long allocatedBytes() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean))
+            return 0;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled())
+            return 0;
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds()))
+            if (bytes > 0)
+                total += bytes;
+        return total;
+    }
+
+    private static void randomise(Engine engine, double density) {
+        new Simulation(engine).randomise(density, RANDOM);
+    }
+
+
+    private static void report(Result result, int size, double density) {
+        result.size = size;
+        result.density = density;
+        results.add(result);
+        System.out.printf(Locale.ROOT, "%-8s %-10s %-13s %6d %7.2f %14.1f %10.1f %-13s %9.3e %-5s %12.1f%n",
+                result.benchmark, result.engine != null ? result.engine : "-", result.rule != null ? result.rule : "-",
+                size, density, result.score, result.error, result.unit, result.perSecond,
+                result.perSecondUnit.substring(0, result.perSecondUnit.indexOf('/')), result.bytesPerOp);
+    }
+
+    // Write every result as an object in a JSON array
+    private static void writeJson(Path file, String label) throws IOException {
+        try (PrintStream out = new PrintStream(Files.newOutputStream(file), false, "UTF-8")) {
+            out.println("[");
+            for (int i = 0; i < results.size(); i++) {
+                Result r = results.get(i);
+                out.printf(Locale.ROOT, "  {\"label\": %s, \"benchmark\": %s, \"engine\": %s, \"rule\": %s, \"size\": %d, "
+                                + "\"density\": %s, \"score\": %.3f, \"scoreError\": %.3f, \"unit\": %s, "
+                                + "\"throughput\": %.1f, \"throughputUnit\": %s, \"allocatedBytesPerOp\": %.1f}%s%n",
+                        quote(label), quote(r.benchmark), quote(r.engine), quote(r.rule), r.size, Double.toString(r.density),
+                        r.score, r.error, quote(r.unit), r.perSecond, quote(r.perSecondUnit), r.bytesPerOp,
+                        i < results.size() - 1 ? "," : "");
+            }
+            out.println("]");
+        }
+    }
+
+    private static String quote(String s) {
+        if (s == null)
+            return "null";
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+
+    // Write the board as an RLE pattern, so reading it back can be measured
+    private static void writeRle(Engine engine, Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            out.write("x = " + engine.getColumns() + ", y = " + engine.getRows() + ", rule = " + engine.getRule() + "\n");
+            int lineLength = 0;
+            int emptyRows = 0;   // Rows ended but not yet written, so runs of empty rows become one "n$"
+            for (int r = 0; r < engine.getRows(); r++) {
+                int c = 0;
+                boolean rowStarted = false;
+                while (c < engine.getColumns()) {
+                    boolean alive = engine.isAlive(r, c);
+                    int run = 1;
+                    while (c + run < engine.getColumns() && engine.isAlive(r, c + run) == alive)
+                        run++;
+                    c += run;
+                    if (!alive && c == engine.getColumns())
+                        break;   // Dead cells at the end of a row are left out
+                    if (!rowStarted && emptyRows > 0) {
+                        lineLength += write(out, (emptyRows > 1 ? emptyRows : "") + "$", lineLength);
+                        emptyRows = 0;
+                    }
+                    rowStarted = true;
+                    lineLength += write(out, (run > 1 ? run : "") + (alive ? "o" : "b"), lineLength);
+                }
+                emptyRows++;
+            }
+            out.write("!\n");
+        }
+    }
+
+    // Write a token, starting a new line first if the line would pass 70 characters. Return how much the line grew.
+    private static int write(BufferedWriter out, String token, int lineLength) throws IOException {
+        if (lineLength + token.length() > 70) {
+            out.write('\n');
+            out.write(token);
+            return token.length() - lineLength;
+        }
+        out.write(token);
+        return token.length();
+    }
+}
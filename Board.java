@@ -1,35 +1,66 @@
 import java.awt.*;
 import javax.swing.*;
 import java.awt.event.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
 
 public class Board extends JPanel implements ActionListener, MouseListener, MouseMotionListener {
 
     private static final long serialVersionUID = 1L;
 
-    private final int n = 100;  // Number of squares along each side of the board ( row & column have same size therefore its n by n )
+    private Simulation simulation;   // Holds the board and the generation number, which is reset to 0 if resetButton is clicked and is 0 at the start. Only used on the simulation thread.
 
-    private int generationCount = 0; //Holds the generation number(Reseted to 0 if resetButton is clicked and is 0 at the start)
+    private SimulationRunner runner;  // Computes the generations on its own thread, off the Event Dispatch Thread
 
-    private boolean[][] current_board;   // Represents the board.  current_board[r][c] is true if the cell in row r, column c is alive.
+    private CheckpointWriter checkpoints = new CheckpointWriter();  // Saves the board without holding up the simulation
+
+    private SimulationMetrics metrics = new SimulationMetrics();  // Step and render latencies and the like, also published over JMX
+
+    private FramePipeline frames = new FramePipeline();  // Snapshots of the board handed from the simulation thread to the screen
+
+    private Random random = new Random(); // Used to fill the board when randomiseButton is clicked
 
     private Color cellColour = Color.RED; //What colour the alive cells will be
 
     // Displays the grid to the user. Highlighted squares (The colour can change if the source code is altered) are alive, rest are dead.
     private Panel gui;
 
-    private Timer play;  // Drives the simulation when the user presses the "Start" button.
+    private Timer refresh;  // Shows the newest snapshot of the board about 60 times a second.
 
     private JButton StartPauseButton;        // Button for starting and Pausing the simulation
     private JButton nextGenerationButton;    // Button for computing just the next generation.
-    private JButton randomiseButton;         // Button for filling the board randomly with each cell having a 10% chance of  being current_board.
+    private JButton randomiseButton;         // Button for filling the board randomly with each cell having a 10% chance of  being alive.
     private JButton resetButton;             // Button for clearing the board, that is setting all the cells to "dead".
     private JButton quitButton;              // Button for ending the program.
+    private JButton fitButton;               // Button for zooming so the whole board fits in the window.
+    private JButton saveButton;              // Button for saving the board to a checkpoint file.
+    private JButton loadButton;              // Button for loading the board from a checkpoint or pattern file.
+    private JFileChooser chooser = new JFileChooser();  // Picks the file to save to or load from
+    private JComboBox<String> speedBox;     // Choice of how many generations are computed per second
+    private JCheckBox statsBox;             // Shows the metrics over the board when ticked
+    private JCheckBox cycleBox;             // Pauses the game when the board starts repeating itself, when ticked
+    private JLabel cycleLabel;              // Shows the period of the cycle the board is in, if it is in one
+    private JComboBox<String> ruleBox;      // Choice of rule, any rule in B/S notation can be typed in
+    private boolean showingRule;            // True while ruleBox is changed to show a loaded rule, rather than by the user
     private JLabel generationNumber;        // JLabel will display the generation count
 
+    private static final String[] SPEEDS = {"2 gen/s", "10 gen/s", "60 gen/s", "Max"};  // Choices in speedBox
+    private static final double[] RATES = {2, 10, 60, 0};  // Generations per second of each choice, 0 is as fast as possible
+    private static final int MAX_PERIOD = 64;  // The longest cycle looked for, which covers the common oscillators
+    private static final String[] RULES = {"B3/S23", "B36/S23", "B3678/S34678", "B2/S", "B3/S012345678"};  // Conway, HighLife, Day & Night, Seeds, Life without Death
+
+    /*
+     * Usage: java Board [engine] [size]
+     * engine is one of the names accepted by Engine.create ("naive" by default), size is n (100 by default).
+     */
     public static void main(String[] args) {
+        String engineName = args.length > 0 ? args[0] : "naive"; //Which stepper computes the generations
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 100; //Number of squares along each side
+
         //Create the frame here
         JFrame frame = new JFrame("Conway's Game Of Life"); //Frame with title
-        JPanel panel = new Board(); //Create JPanel in class Game, easier to add everything in the constructor to the panel
+        JPanel panel = new Board(engineName, size); //Create JPanel in class Game, easier to add everything in the constructor to the panel
         frame.setContentPane(panel); //Container object, can hold AWT Components
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE); //Click the 'X' to close the game
         frame.pack(); //Size the window to fit all components
@@ -42,14 +73,27 @@ public class Board extends JPanel implements ActionListener, MouseListener, Mous
      * Create the game board, initially empty.
      * The number of cells on each side of the grid is n( Size of the grid is n by n).
      */
-    private Board() {
-
-        current_board = new boolean[n][n];                          //  Create the current_board with width and height n( n by n).
+    private Board(String engineName, int n) {
+
+        Engine engine = Engine.create(engineName, n, n);             //  Create the board with width and height n( n by n).
+        simulation = new Simulation(engine);                         //  The simulation counts the generations of the board
+        simulation.setMetrics(metrics);                              //  Every step is timed
+        simulation.setCycleDetector(new CycleDetector(MAX_PERIOD));  //  Every generation is checked for a repeat
+        metrics.setFrames(frames);
+        metrics.register("Board");                                   //  The metrics can be watched with jconsole
+        runner = new SimulationRunner(simulation, frames);           //  Steps the simulation on its own thread
         setLayout(new BorderLayout(5, 5));                           //  Container has BorderLayout with 5X5 gap between components.
         setBackground(Color.BLACK);                                 //  Background of the component(Panel)
         setBorder(BorderFactory.createLineBorder(Color.YELLOW, 5));  //  Border colour of the component(Border refers to the outer edges of the grid
-        int cellSize = 800 / n;                                       //  Size of the cells, 800/n is 8 pixels per Cell, Ideal size
+        int cellSize = Math.max(1, 800 / n);                          //  Size of the cells, 800/n is 8 pixels per Cell, Ideal size
         gui = new Panel(n, n, cellSize, cellSize);                    //  Declare gui as new Panel object with parameters of (n,n,cellSize,cellSize,null,0)
+        gui.setCellColour(cellColour);                                //  Alive cells are drawn in cellColour
+        gui.setMetrics(metrics);                                      //  Every frame drawn is timed
+        if (engine instanceof WindowEngine) {                         //  Panning an unbounded universe moves the window over it
+            WindowEngine window = (WindowEngine) engine;
+            gui.setPanListener((columns, rows) ->
+                    runner.submit(() -> window.setOrigin(window.getLeft() + columns, window.getTop() + rows)));
+        }
         add(gui, BorderLayout.CENTER);                                //  Add gui to Center using BorderLayout
         JPanel button = new JPanel();                                //  Create a JPanel called buttons, which will contain all the buttons/Labels
         add(button, BorderLayout.SOUTH);                                //  Add buttons Panel to SOUTH
@@ -60,7 +104,16 @@ public class Board extends JPanel implements ActionListener, MouseListener, Mous
         quitButton = new JButton("Quit");
         nextGenerationButton = new JButton("One Step");
         randomiseButton = new JButton("Randomise");
-        generationNumber = new JLabel("Generation Count: " + generationCount);
+        fitButton = new JButton("Fit");
+        saveButton = new JButton("Save");
+        loadButton = new JButton("Load");
+        speedBox = new JComboBox<>(SPEEDS);
+        ruleBox = new JComboBox<>(RULES);
+        ruleBox.setEditable(true);
+        statsBox = new JCheckBox("Stats");
+        cycleBox = new JCheckBox("Pause on cycle", true);
+        cycleLabel = new JLabel();
+        generationNumber = new JLabel("Generation Count: " + simulation.getGeneration());
 
 
         //Add all buttons/labels to the container (JPanel called button).
@@ -69,7 +122,15 @@ public class Board extends JPanel implements ActionListener, MouseListener, Mous
         button.add(randomiseButton);
         button.add(resetButton);
         button.add(quitButton);
+        button.add(fitButton);
+        button.add(saveButton);
+        button.add(loadButton);
+        button.add(speedBox);
+        button.add(ruleBox);
+        button.add(statsBox);
+        button.add(cycleBox);
         button.add(generationNumber);
+        button.add(cycleLabel);
 
 
         //Add an action listener to the buttons
@@ -78,77 +139,44 @@ public class Board extends JPanel implements ActionListener, MouseListener, Mous
         quitButton.addActionListener(this);
         randomiseButton.addActionListener(this);
         nextGenerationButton.addActionListener(this);
+        fitButton.addActionListener(this);
+        saveButton.addActionListener(this);
+        loadButton.addActionListener(this);
+        speedBox.addActionListener(this);
+        ruleBox.addActionListener(this);
+        statsBox.addActionListener(this);
+        cycleBox.addActionListener(this);
         gui.addMouseListener(this);
         gui.addMouseMotionListener(this);
 
-        // play variable has 500millisecond delay(Half a second),
-        play = new Timer(500, this);
-    }
-
-
-    //Compute the next generation
-    private void nextGeneration() {
-        boolean[][] newboard = new boolean[n][n];      // Create a newBoard boolean array that has the same size as "current_board"
-        for (int r = 0; r < n; r++) {                // Iterate through the rows
-            int above, below;                          // Rows considered above and below row number r
-            int left, right;                           // Columns considered left and right of column c
-            // The condition, (r > 0), is tested. If it is true the first value, r - 1, is returned. If it is false, the second value, n - 1, is returned.
-            above = r > 0 ? r - 1 : n - 1;        // IF NOT first row, THEN check row above ELSE check last row ( n -1 because the grid wrap's around and there is no "last" row)
-            below = r < n - 1 ? r + 1 : 0;         // IF NOT last row, THEN check row below, ELSE check first row
-
-            for (int c = 0; c < n; c++) { //Iterate through the columns
-                left = c > 0 ? c - 1 : n - 1; // IF NOT first column, THEN check column to the left, ELSE check last column
-                right = c < n - 1 ? c + 1 : 0; // IF NOT last column, THEN check column to the right, ELSE check first column
-
-                int counter = 0; // Hold the number of alive cells surrounding the [r][c]
-                if (current_board[above][left]) //Top left
-                    counter++;
-                if (current_board[above][c]) //Directly above
-                    counter++;
-                if (current_board[above][right]) // Top right
-                    counter++;
-                if (current_board[r][left]) //Adjacent left
-                    counter++;
-                if (current_board[r][right]) //Adjacent right
-                    counter++;
-                if (current_board[below][left]) //Bottom left
-                    counter++;
-                if (current_board[below][c]) //Directly below
-                    counter++;
-                if (current_board[below][right]) //Bottom right
-                    counter++;
-
-                //ALIVE TO DEAD
-                newboard[r][c] = counter == 3; //DEAD TO ALIVE IF NEIGHBOUR COUNT IS 3
-            }
-        }
-
-        generationCount += 1; //Update generationCount by 1
-
-        generationNumber.setText("Generation Count: " + generationCount); //Show this new generation count
-
-
-        current_board = newboard; //Current board becomes new board
-
+        // The first speed is 2 generations a second, the 500 millisecond delay (Half a second) the game always had.
+        runner.setTargetRate(RATES[0]);
+        runner.setPauseOnCycle(cycleBox.isSelected());
+        runner.setCycleListener((period, onset, paused) -> SwingUtilities.invokeLater(() -> showCycle(period, onset, paused)));
+        checkpoints.setErrorHandler(e -> showError("Could not save: " + e.getMessage()));
+        runner.setErrorHandler(e -> {  // The game stops if a step failed, so the buttons are set up for that
+            showError("Something went wrong: " + e);
+            SwingUtilities.invokeLater(() -> {
+                if (!runner.isRunning())
+                    showPaused();
+            });
+        });
+        runner.start();
+
+        // refresh has a 16 millisecond delay, about as often as the screen is redrawn
+        refresh = new Timer(16, this);
+        refresh.start();
     }
 
 
     /*
-     *  Sets the colour of every square in the gui to show whether the corresponding
-     *  cell on the Game board is alive or dead.
+     *  Shows the snapshot of the board in the gui, alive cells are drawn in cellColour and dead ones in black.
      */
-    private void showBoard() { //Automation of the board
-        gui.setAutopaint(false);  // For efficiency, prevent redrawing of individual squares.
-        for (int r = 0; r < n; r++) {
-            for (int c = 0; c < n; c++) {
-                if (current_board[r][c])
-                    gui.setColour(r, c, cellColour); //COLOUR OF THE RECTANGLES IF ALIVE
-                else
-                    gui.setColour(r, c, Color.BLACK);  // COLOUR OF THE RECTANGLES IF DEAD, defaultColor in the Panel class ( rectangles have same colour as background ).
-            }
-        }
-        gui.setAutopaint(true);  // Redraw the whole board, and turn on drawing of individual squares.
+    private void showBoard(Frame frame) { //Automation of the board
+        metrics.recordPopulation(frame.getPopulation());
+        gui.showCells(frame.getCells()); // Only the cells that changed since the last snapshot are redrawn
 
+        generationNumber.setText("Generation Count: " + frame.getGeneration()); //Show the generation count of the snapshot
     }
 
 
@@ -158,60 +186,137 @@ public class Board extends JPanel implements ActionListener, MouseListener, Mous
         if (src == quitButton) { // End the program.
             System.exit(0); //Exit program
         } else if (src == resetButton) {  // Clear the board.
-            current_board = new boolean[n][n]; //Create new board, n by n
-            generationCount = 0; //Reset generationCount to 0
-            generationNumber.setText("Generation Count: " + generationCount); //Show this generation count
-
-            gui.clear(); //Clear the gui object
+            runner.submitEdit(simulation::reset); //Set every cell on the board to dead and the generation count to 0, the cleared board is then shown
         } else if (src == nextGenerationButton) {  // Compute and show the next generation.
-            nextGeneration(); //Compute new generation
-            showBoard(); //Show this new generation
+            runner.submit(simulation::step); //Compute new generation, it is shown when it is ready. Not an edit, so a cycle can still be found
         } else if (src == StartPauseButton) {  // Start or stop the simulation, depending on whether or not it is currently running.
-            if (play.isRunning()) {  // If the game is currently running.
-                play.stop();  // This stops the simulation by turning off the play that drives the game.
-                resetButton.setEnabled(true);  // Some buttons are enabled while simulation stops.
-                randomiseButton.setEnabled(true);
-                nextGenerationButton.setEnabled(true);
-                StartPauseButton.setText("Start");  // Change text of button to "Start", since it can be used to start again.
+            if (runner.isRunning()) {  // If the game is currently running.
+                runner.setRunning(false);  // This stops the simulation thread computing generations.
+                showPaused();
             } else {  // If the  is not currently running, start it.
-                play.start();  // Start the timer that will drive the game.
+                runner.setRunning(true);  // Start the simulation thread that will drive the game.
                 resetButton.setEnabled(false);  // Buttons that modify the board are disabled
                 randomiseButton.setEnabled(false);
                 nextGenerationButton.setEnabled(false);
                 StartPauseButton.setText("Pause"); // Change text of button to "Stop", since it can be used to stops.
             }
         } else if (src == randomiseButton) { // Fill the board randomly.
-            for (int r = 0; r < n; r++) {
-                for (int c = 0; c < n; c++)
-                    current_board[r][c] = (Math.random() < 0.10);  // 10% probability that the cell is alive.
+            runner.submitEdit(() -> simulation.randomise(0.10, random));  // 10% probability that the cell is alive.
+        } else if (src == fitButton) { // Show the whole board
+            gui.fitToView();
+        } else if (src == saveButton) { // Save the board, the simulation carries on while it is written
+            if (chooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+                File file = chooser.getSelectedFile();
+                runner.submit(() -> {
+                    if (!checkpoints.save(simulation, file.toPath()))
+                        showError("The last checkpoint is still being written, try again shortly.");
+                });
             }
-            showBoard();
-        } else if (src == play) {  // Each time the play fires, a new frame is computed and displayed.
+        } else if (src == loadButton) { // Replace the board with a saved one or a pattern
+            if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+                File file = chooser.getSelectedFile();
+                runner.submitEdit(() -> load(file));
+            }
+        } else if (src == speedBox) { // Change how many generations are computed per second
+            runner.setTargetRate(RATES[speedBox.getSelectedIndex()]);
+        } else if (src == ruleBox && !showingRule && e.getActionCommand().equals("comboBoxChanged")) { // Change the rule
+            String text = String.valueOf(ruleBox.getSelectedItem());
+            try {
+                Rule rule = Rule.parse(text);
+                runner.submitEdit(() -> {
+                    try {
+                        simulation.getEngine().setRule(rule);
+                    } catch (IllegalArgumentException ex) {  // Birth on 0 is not possible on an unbounded universe
+                        showError(ex.getMessage());
+                        showRule(simulation.getEngine().getRule());
+                    }
+                });
+            } catch (IllegalArgumentException ex) {
+                showError(ex.getMessage() + ". Rules are written like B3/S23.");
+            }
+        } else if (src == statsBox) { // Show or hide the metrics
+            gui.setOverlay(statsBox.isSelected());
+        } else if (src == cycleBox) { // Pause, or carry on, when the board repeats itself
+            runner.setPauseOnCycle(cycleBox.isSelected());
+        } else if (src == refresh) {  // Each time refresh fires, the newest snapshot (if there is one) is displayed.
+            Frame frame = frames.take(); // Snapshots that arrived since the last refresh and were not shown are dropped
+            if (frame != null) {
+                showBoard(frame);
+                frames.release(frame); // The snapshot can be reused by the simulation thread
+            }
+        }
+    }
+
+
+    // Set the buttons up for a stopped game
+    private void showPaused() {
+        resetButton.setEnabled(true);  // Some buttons are enabled while simulation stops.
+        randomiseButton.setEnabled(true);
+        nextGenerationButton.setEnabled(true);
+        StartPauseButton.setText("Start");  // Change text of button to "Start", since it can be used to start again.
+    }
+
+    // Show the cycle the board entered (period 1 is a still life), or clear it if period is 0
+    private void showCycle(int period, long onset, boolean paused) {
+        if (period == 0)
+            cycleLabel.setText("");
+        else if (period == 1)
+            cycleLabel.setText("Still from generation " + onset);
+        else
+            cycleLabel.setText("Period " + period + " from generation " + onset);
+        if (paused)
+            showPaused();  // The runner stopped itself, so the game is not using the processor for nothing
+    }
+
 
-            nextGeneration();
-            showBoard();
+    /*
+     * Run on the simulation thread: replace the board with the checkpoint in the file, which must be the same size,
+     * or clear it and put the pattern (RLE, Life 1.06 or plaintext) in the file at the top left corner.
+     */
+    private void load(File file) {
+        try {
+            if (Checkpoint.isCheckpoint(file.toPath())) {
+                Checkpoint.read(file.toPath()).restore(simulation);
+            } else {
+                simulation.reset();
+                PatternReader.read(file.toPath(), 0, 0, PatternReader.into(simulation.getEngine()));
+            }
+            showRule(simulation.getEngine().getRule());  // A checkpoint or pattern can bring its own rule
+        } catch (IOException | IllegalArgumentException e) {
+            showError("Could not load " + file.getName() + ": " + e.getMessage());
         }
     }
 
+    // Show the rule in ruleBox, from any thread, without changing it again
+    private void showRule(Rule rule) {
+        SwingUtilities.invokeLater(() -> {
+            showingRule = true;
+            ruleBox.setSelectedItem(rule.toString());
+            showingRule = false;
+        });
+    }
+
+    // Show an error message, from any thread
+    private void showError(String message) {
+        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, message, "Game Of Life", JOptionPane.ERROR_MESSAGE));
+    }
+
 
     /*
      * The square containing the mouse comes to life or, if the right-mouse button is down, dies.
+     * The change is made by the simulation thread between generations, so it works while the game is running too.
+     * Shift or the middle button pans the view (or the window of an unbounded universe) instead, which the gui handles itself.
      */
     public void mousePressed(MouseEvent e) {
-        if (play.isRunning()) //If game already running then do nothing
+        if (Panel.isPanGesture(e))
             return;
         int row = gui.yCoordToRowNumber(e.getY());      //Get Y position, which row contains the mouse being clicked?,  Y is same on single row
         int col = gui.xCoordToColumnNumber(e.getX()); //Get X position, which column contains the mouse being clicked?, X is same on single column
 
         // Check if the row variable is within the rowcount and whether col is within the column count
         if (row >= 0 && row < gui.getRowCount() && col >= 0 && col < gui.getColumnCount()) { // Within the boundaries
-            if (e.isControlDown()) { //If control is pressed then cell is dead
-                gui.setColour(row, col, null); // Colour remains the same
-                current_board[row][col] = false; //Cell is set to false/dead
-            } else {
-                gui.setColour(row, col, cellColour); //Colour of cell changes to white
-                current_board[row][col] = true; //Cell is alive
-            }
+            boolean alive = !e.isControlDown(); //If control is pressed then cell is dead, else it is alive
+            runner.submitEdit(() -> simulation.getEngine().setAlive(row, col, alive)); //Cell is set, it is shown in the next snapshot
         }
     }
 
@@ -0,0 +1,353 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+ * A saved board, in a binary file that is written and read through memory-mapped chunks, so even a board of several
+ * gigabytes is saved and resumed with bulk copies rather than parsing.
+ *
+ * The file is little-endian: a fixed HEADER_BYTES header, then the body as longs.
+ *   0  int   magic "GOLC"           4  short version       6  byte topology      7  byte encoding
+ *   8  int   rows                  12  int   columns      16  long generation   24  long population
+ *  32  long  left                  40  long  top          48  long number of longs in the body
+ *  56  short length of the rule    58  the rule in ASCII, such as "B3/S23"
+ * Topology is TORUS for boards whose edges wrap, or PLANE for a window (at left, top) of an unbounded universe.
+ * With the PACKED encoding the body is the packed rows as in Engine.copyTo. A mostly empty board is stored SPARSE
+ * instead: pairs of (word index, word) for the words that are not 0. A PLANE checkpoint holds the whole universe,
+ * not just the window, so it is stored as CELLS: pairs of (x, y) for every live cell, and population counts them all.
+ *
+ * Like Frame, a checkpoint is captured on the simulation thread and can then be written by any thread.
+ */
+public final class Checkpoint {
+
+    static final int MAGIC = 0x434C4F47;    // "GOLC" when read as bytes
+    static final short VERSION = 1;
+    static final byte TORUS = 0;            // The edges of the board wrap around
+    static final byte PLANE = 1;            // The board is a window of an unbounded universe
+    static final byte PACKED = 0;           // The body is every packed word
+    static final byte SPARSE = 1;           // The body is (index, word) pairs of the words that are not 0
+    static final byte CELLS = 2;            // The body is (x, y) pairs of the live cells of a universe
+    static final int HEADER_BYTES = 128;    // Keeps the body aligned for mapping as longs
+
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+    private static final int CHUNK_BYTES = 1 << 30;   // The most mapped at once, a MappedByteBuffer is limited to 2GB
+    private static final int MAX_LONGS = Integer.MAX_VALUE - 8;  // The most longs an array can hold
+
+    private final int rows;          // The number of rows on the board
+    private final int columns;       // The number of columns on the board
+    private final int words;         // The number of longs used to store one row
+    private final long[] cells;      // The packed cells, for PLANE those in the window
+    private long[] universe = new long[0];  // For PLANE, (x, y) of every live cell of the universe
+    private int universeLongs;       // The number of longs of universe in use
+    private long generation;         // The generation the board was saved at
+    private long population;         // The number of live cells
+    private byte topology = TORUS;   // TORUS or PLANE
+    private long left, top;          // For PLANE, the cell of the universe at row 0, column 0
+    private String rule = Rule.CONWAY.toString();  // The rule the board was running
+
+
+    Checkpoint(int rows, int columns) {
+        this.rows = rows;
+        this.columns = columns;
+        words = (columns + 63) >>> 6;
+        cells = new long[rows * words];
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    // The packed cells. Callers must not change them.
+    public long[] getCells() {
+        return cells;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public long getPopulation() {
+        return population;
+    }
+
+    public byte getTopology() {
+        return topology;
+    }
+
+    public String getRule() {
+        return rule;
+    }
+
+    // Return true if this checkpoint can hold the board of the engine
+    boolean fits(Engine engine) {
+        return engine.getRows() == rows && engine.getColumns() == columns;
+    }
+
+    /*
+     * Copy the current generation of the simulation into this checkpoint. Only call this on the simulation thread.
+     * For a window, every live cell of the universe is copied, inside the window or not.
+     */
+    void capture(Simulation simulation) {
+        Engine engine = simulation.getEngine();
+        engine.copyTo(cells);
+        generation = simulation.getGeneration();
+        rule = engine.getRule().toString();
+        universeLongs = 0;
+        if (engine instanceof WindowEngine) {
+            topology = PLANE;
+            left = ((WindowEngine) engine).getLeft();
+            top = ((WindowEngine) engine).getTop();
+            ((WindowEngine) engine).getUniverse().forEachAlive(this::addCell);
+            population = universeLongs / 2;
+        } else {
+            topology = TORUS;
+            left = top = 0;
+            population = 0;
+            for (long word : cells)
+                population += Long.bitCount(word);
+        }
+    }
+
+    // Add a live cell of the universe
+    private void addCell(long x, long y) {
+        if (universeLongs + 2 > universe.length) {
+            if (universe.length >= MAX_LONGS - 1)
+                throw new IllegalStateException("The universe has too many live cells to save");
+            universe = Arrays.copyOf(universe, (int) Math.min(MAX_LONGS - 1, Math.max(1024, universe.length * 2L)));
+        }
+        universe[universeLongs++] = x;
+        universe[universeLongs++] = y;
+    }
+
+
+    /*
+     * Replace the board of the simulation with this checkpoint and set its generation count.
+     * The simulation must have the same number of rows and columns. The engine is switched to the rule that was
+     * saved, and a window is moved back to where it was.
+     */
+    void restore(Simulation simulation) {
+        Engine engine = simulation.getEngine();
+        if (!fits(engine))
+            throw new IllegalArgumentException("The checkpoint is " + rows + "x" + columns + " but the board is "
+                    + engine.getRows() + "x" + engine.getColumns());
+        engine.setRule(Rule.parse(rule));
+        if (topology == PLANE && engine instanceof WindowEngine) {
+            WindowEngine window = (WindowEngine) engine;
+            window.setOrigin(left, top);
+            window.clear();
+            Universe plane = window.getUniverse();
+            for (int i = 0; i < universeLongs; i += 2)
+                plane.setAlive(universe[i], universe[i + 1], true);
+            simulation.restored(generation);
+        } else {
+            simulation.restore(cells, generation);  // Only the window of a universe is put on a torus board
+        }
+    }
+
+
+    /*
+     * Write the checkpoint to the file. It is written to a temporary file next to it first and then moved over it,
+     * so the previous checkpoint survives if writing fails part way through.
+     */
+    void write(Path file) throws IOException {
+        int nonZero = 0;
+        for (long word : cells)
+            if (word != 0)
+                nonZero++;
+        byte encoding = topology == PLANE ? CELLS : 2L * nonZero < cells.length ? SPARSE : PACKED;
+        long bodyLongs = encoding == CELLS ? universeLongs : encoding == SPARSE ? 2L * nonZero : cells.length;
+
+        byte[] ruleBytes = rule.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ORDER);
+        header.putInt(MAGIC).putShort(VERSION).put(topology).put(encoding);
+        header.putInt(rows).putInt(columns).putLong(generation).putLong(population);
+        header.putLong(left).putLong(top).putLong(bodyLongs);
+        header.putShort((short) ruleBytes.length).put(ruleBytes);
+        header.clear();
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining())
+                channel.write(header, header.position());
+            MappedLongs body = new MappedLongs(channel, FileChannel.MapMode.READ_WRITE, bodyLongs);
+            if (encoding == PACKED) {
+                body.put(cells, 0, cells.length);
+            } else if (encoding == CELLS) {
+                body.put(universe, 0, universeLongs);
+            } else {
+                for (int i = 0; i < cells.length; i++) {
+                    if (cells[i] != 0) {
+                        body.put(i);
+                        body.put(cells[i]);
+                    }
+                }
+            }
+            body.force();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+
+    // Return true if the file starts like a checkpoint
+    static boolean isCheckpoint(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4).order(ORDER);
+            while (magic.hasRemaining())
+                if (channel.read(magic) < 0)
+                    return false;
+            magic.flip();
+            return magic.getInt() == MAGIC;
+        }
+    }
+
+
+    /*
+     * Read a checkpoint written by write.
+     */
+    static Checkpoint read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ORDER);
+            while (header.hasRemaining())
+                if (channel.read(header, header.position()) < 0)
+                    throw new IOException("Not a checkpoint (too short): " + file);
+            header.flip();
+            if (header.getInt() != MAGIC)
+                throw new IOException("Not a checkpoint: " + file);
+            short version = header.getShort();
+            if (version != VERSION)
+                throw new IOException("Unsupported checkpoint version " + version + ": " + file);
+            byte topology = header.get();
+            byte encoding = header.get();
+            int rows = header.getInt();
+            int columns = header.getInt();
+            if (rows <= 0 || columns <= 0 || (long) rows * ((columns + 63) >>> 6) > Integer.MAX_VALUE - 8)
+                throw new IOException("Bad board size " + rows + "x" + columns + ": " + file);
+
+            Checkpoint checkpoint = new Checkpoint(rows, columns);
+            checkpoint.topology = topology;
+            checkpoint.generation = header.getLong();
+            checkpoint.population = header.getLong();
+            checkpoint.left = header.getLong();
+            checkpoint.top = header.getLong();
+            long bodyLongs = header.getLong();
+            byte[] ruleBytes = new byte[header.getShort()];
+            header.get(ruleBytes);
+            checkpoint.rule = new String(ruleBytes, StandardCharsets.US_ASCII);
+
+            long[] cells = checkpoint.cells;
+            if (channel.size() < HEADER_BYTES + 8 * bodyLongs || bodyLongs < 0)
+                throw new IOException("Checkpoint is truncated: " + file);
+            MappedLongs body = new MappedLongs(channel, FileChannel.MapMode.READ_ONLY, bodyLongs);
+            if (encoding == PACKED && bodyLongs == cells.length) {
+                body.get(cells, 0, cells.length);
+            } else if (encoding == SPARSE && bodyLongs % 2 == 0) {
+                for (long pair = 0; pair < bodyLongs / 2; pair++) {
+                    long index = body.get();
+                    long word = body.get();
+                    if (index < 0 || index >= cells.length)
+                        throw new IOException("Bad word index " + index + ": " + file);
+                    cells[(int) index] = word;
+                }
+            } else if (encoding == CELLS && topology == PLANE && bodyLongs % 2 == 0 && bodyLongs <= MAX_LONGS) {
+                checkpoint.universe = new long[(int) bodyLongs];
+                checkpoint.universeLongs = (int) bodyLongs;
+                body.get(checkpoint.universe, 0, checkpoint.universeLongs);
+                for (int i = 0; i < checkpoint.universeLongs; i += 2) {  // Also fill in the window, for a torus board
+                    long c = checkpoint.universe[i] - checkpoint.left, r = checkpoint.universe[i + 1] - checkpoint.top;
+                    if (c >= 0 && c < columns && r >= 0 && r < rows)
+                        cells[(int) r * checkpoint.words + (int) (c >>> 6)] |= 1L << c;
+                }
+            } else {
+                throw new IOException("Bad checkpoint body: " + file);
+            }
+            return checkpoint;
+        }
+    }
+
+
+    /*
+     * Reads or writes the longs of the body through mapped chunks of the file, one chunk at a time.
+     */
+    private static final class MappedLongs {
+
+        private final FileChannel channel;
+        private final FileChannel.MapMode mode;
+        private final long end;          // The file offset just past the body
+        private long position;           // The file offset of the next chunk to map
+        private MappedByteBuffer chunk;  // The chunk being read or written
+        private LongBuffer longs;        // chunk as longs
+
+
+        MappedLongs(FileChannel channel, FileChannel.MapMode mode, long count) {
+            this.channel = channel;
+            this.mode = mode;
+            position = HEADER_BYTES;
+            end = HEADER_BYTES + 8 * count;
+        }
+
+        void put(long value) throws IOException {
+            if (longs == null || !longs.hasRemaining())
+                nextChunk();
+            longs.put(value);
+        }
+
+        void put(long[] values, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (longs == null || !longs.hasRemaining())
+                    nextChunk();
+                int n = Math.min(length, longs.remaining());
+                longs.put(values, offset, n);
+                offset += n;
+                length -= n;
+            }
+        }
+
+        long get() throws IOException {
+            if (longs == null || !longs.hasRemaining())
+                nextChunk();
+            return longs.get();
+        }
+
+        void get(long[] values, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (longs == null || !longs.hasRemaining())
+                    nextChunk();
+                int n = Math.min(length, longs.remaining());
+                longs.get(values, offset, n);
+                offset += n;
+                length -= n;
+            }
+        }
+
+        // Make sure what was written has reached the file
+        void force() {
+            if (chunk != null && mode == FileChannel.MapMode.READ_WRITE)
+                chunk.force();
+        }
+
+        private void nextChunk() throws IOException {
+            force();
+            long size = Math.min(CHUNK_BYTES, end - position);
+            if (size <= 0)
+                throw new IOException("Read or wrote past the end of the checkpoint");
+            chunk = channel.map(mode, position, size);
+            chunk.order(ORDER);
+            longs = chunk.asLongBuffer();
+            position += size;
+        }
+    }
+}
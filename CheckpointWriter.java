@@ -0,0 +1,95 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/*
+ * Writes checkpoints on a background thread, so a long run can be saved every so often without the simulation
+ * waiting for the disk. The simulation thread only copies the board into a Checkpoint, as it does for a Frame;
+ * the file is written while the next generations are computed.
+ *
+ * One checkpoint is reused, so at most one save is in progress: a save asked for while the last one is still being
+ * written is skipped, rather than queueing up copies of the board.
+ */
+public class CheckpointWriter {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Checkpoint writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Checkpoint checkpoint;              // Reused for every save, only touched by one save at a time
+    private volatile boolean writing;           // True from capture until the file has been written
+    private volatile IOException lastError;     // The last save that failed, or null
+    private volatile long skipped;              // Saves not made because the last one was still being written
+    private volatile Consumer<IOException> onError = e -> { };  // Told about saves that fail, on the writer thread
+
+
+    /*
+     * Called on the simulation thread. Copy the board and write it to the file in the background.
+     * Return false if the last save is still being written, in which case nothing is saved.
+     */
+    public boolean save(Simulation simulation, Path file) {
+        if (writing) {
+            skipped++;   // Only the simulation thread writes this
+            return false;
+        }
+        writing = true;
+        if (checkpoint == null || !checkpoint.fits(simulation.getEngine()))
+            checkpoint = new Checkpoint(simulation.getEngine().getRows(), simulation.getEngine().getColumns());
+        checkpoint.capture(simulation);
+        executor.execute(() -> {
+            try {
+                checkpoint.write(file);
+                lastError = null;
+            } catch (IOException e) {
+                lastError = e;
+                onError.accept(e);
+            } finally {
+                writing = false;
+            }
+        });
+        return true;
+    }
+
+    // Wait for the save in progress (if any) to finish, and throw its error if it failed
+    public void finish() throws IOException {
+        try {
+            executor.submit(() -> { }).get();
+        } catch (Exception e) {
+            throw new IOException("Interrupted while waiting for a checkpoint", e);
+        }
+        if (lastError != null)
+            throw lastError;
+    }
+
+    // Finish the save in progress and stop the background thread
+    public void close() throws IOException {
+        finish();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Set what is done when a save fails, it is called on the writer thread
+    public void setErrorHandler(Consumer<IOException> onError) {
+        this.onError = onError;
+    }
+
+    public boolean isWriting() {
+        return writing;
+    }
+
+    public IOException getLastError() {
+        return lastError;
+    }
+
+    public long getSkippedSaves() {
+        return skipped;
+    }
+}
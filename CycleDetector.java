@@ -0,0 +1,70 @@
+/*
+ * Spots a board that repeats, from the hashes of its generations (see Zobrist).
+ * The hashes of the last maxPeriod generations are kept in a ring. If the board after a step hashes the same as it
+ * did p generations before, it has entered a cycle of period p (1 for a still life) that began p generations ago,
+ * and every later generation can be worked out without stepping: generation g looks like onset + (g - onset) % p.
+ * Hashes are 64 bits, so a false match is possible in principle but vanishingly unlikely.
+ *
+ * Once a cycle is found it is kept until reset, which must be called whenever the board is changed other than by
+ * stepping.
+ */
+public class CycleDetector {
+
+    private final long[] hashes;      // hashes[g % maxPeriod] is the hash of generation g, for the last maxPeriod generations
+    private long first = -1;          // The first generation in the ring, -1 if it is empty
+    private long last;                // The last generation in the ring
+    private int period;               // The period found, 0 if none yet
+    private long onset;               // The first generation of the cycle
+
+
+    public CycleDetector(int maxPeriod) {
+        if (maxPeriod < 1)
+            throw new IllegalArgumentException("The longest period must be at least 1: " + maxPeriod);
+        hashes = new long[maxPeriod];
+    }
+
+    public int getMaxPeriod() {
+        return hashes.length;
+    }
+
+    /*
+     * Note the hash of the board at a generation, which must follow the last one noted (or be the first since a
+     * reset). Return the period if this generation completes a cycle, or 0. Allocates nothing.
+     */
+    public int observe(long generation, long hash) {
+        if (period != 0)
+            return period;
+        if (first < 0 || generation != last + 1) {  // Start again after a reset or a gap
+            first = generation;
+        } else {
+            long oldest = Math.max(first, generation - hashes.length);
+            for (long g = generation - 1; g >= oldest; g--) {  // Newest first, so the shortest period is found
+                if (hashes[(int) (g % hashes.length)] == hash) {
+                    period = (int) (generation - g);
+                    onset = g;
+                    break;
+                }
+            }
+        }
+        hashes[(int) (generation % hashes.length)] = hash;
+        last = generation;
+        return period;
+    }
+
+    // Return the period found, or 0 if no cycle has been found
+    public int getPeriod() {
+        return period;
+    }
+
+    // Return the first generation of the cycle found
+    public long getOnset() {
+        return onset;
+    }
+
+    // Forget every generation, because the board was changed
+    public void reset() {
+        first = -1;
+        period = 0;
+        onset = 0;
+    }
+}
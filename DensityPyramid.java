@@ -0,0 +1,120 @@
+import java.util.Arrays;
+
+/*
+ * Live cell counts of square blocks of a packed board, used by Panel to draw a board zoomed out below one pixel
+ * per cell without visiting every cell on every repaint.
+ *
+ * Level m holds the count of every aligned block of 2^m by 2^m cells, for m from BASE up to the top level.
+ * Level BASE is built straight from the packed rows, eight rows at a time, with a byte-wise popcount of each word
+ * giving the counts of its eight 8 by 8 blocks at once. Only groups of eight rows and one word that were marked
+ * dirty are recounted, and every level above is summed from the one below.
+ */
+class DensityPyramid {
+
+    static final int BASE = 3;  // The lowest level kept, blocks of 8 by 8 cells
+
+    private final int rows;           // The number of rows on the board
+    private final int columns;        // The number of columns on the board
+    private final int words;          // The number of longs in one packed row
+    private final int[][] counts;     // counts[m - BASE][blockRow * levelColumns(m) + blockCol]
+    private final boolean[] dirty;    // dirty[(row >> BASE) * words + word] is true if those 8 rows of the word changed
+    private boolean stale = true;     // True if any group is dirty, so the levels above BASE need summing again
+
+
+    DensityPyramid(int rows, int columns, int topLevel) {
+        this.rows = rows;
+        this.columns = columns;
+        words = (columns + 63) >>> 6;
+        counts = new int[Math.max(0, topLevel - BASE + 1)][];
+        for (int m = BASE; m <= topLevel; m++)
+            counts[m - BASE] = new int[levelRows(m) * levelColumns(m)];
+        dirty = new boolean[levelRows(BASE) * words];
+        markAll();
+    }
+
+    // Return the highest level kept
+    int getTopLevel() {
+        return BASE + counts.length - 1;
+    }
+
+    // Return the number of rows of blocks in level m
+    int levelRows(int m) {
+        return ((rows - 1) >> m) + 1;
+    }
+
+    // Return the number of columns of blocks in level m
+    int levelColumns(int m) {
+        return ((columns - 1) >> m) + 1;
+    }
+
+    // Return the number of live cells in the block of level m at blockRow, blockCol
+    int count(int m, int blockRow, int blockCol) {
+        return counts[m - BASE][blockRow * levelColumns(m) + blockCol];
+    }
+
+    // Note that word w of row r has changed
+    void markDirty(int r, int w) {
+        dirty[(r >> BASE) * words + w] = true;
+        stale = true;
+    }
+
+    // Note that every cell may have changed
+    void markAll() {
+        Arrays.fill(dirty, true);
+        stale = true;
+    }
+
+
+    /*
+     * Bring the counts up to date with the packed cells.
+     */
+    void update(long[] cells) {
+        if (!stale || counts.length == 0)
+            return;
+        int[] base = counts[0];
+        int baseColumns = levelColumns(BASE);
+        for (int group = 0; group < levelRows(BASE); group++) {
+            int last = Math.min(rows, (group + 1) << BASE);
+            for (int w = 0; w < words; w++) {
+                if (!dirty[group * words + w])
+                    continue;
+                dirty[group * words + w] = false;
+                long sum = 0;   // Eight byte-wide counts, at most 64 each so they never carry into each other
+                for (int r = group << BASE; r < last; r++)
+                    sum += bytePopCount(cells[r * words + w]);
+                for (int b = 0; b < 8 && w * 8 + b < baseColumns; b++)
+                    base[group * baseColumns + w * 8 + b] = (int) ((sum >>> (b * 8)) & 0xFF);
+            }
+        }
+
+        for (int m = BASE + 1; m <= getTopLevel(); m++) {
+            int[] below = counts[m - 1 - BASE];
+            int[] level = counts[m - BASE];
+            int belowRows = levelRows(m - 1);
+            int belowColumns = levelColumns(m - 1);
+            int levelColumns = levelColumns(m);
+            for (int br = 0; br < levelRows(m); br++) {
+                for (int bc = 0; bc < levelColumns; bc++) {
+                    int r = br * 2, c = bc * 2;
+                    int sum = below[r * belowColumns + c];
+                    if (c + 1 < belowColumns)
+                        sum += below[r * belowColumns + c + 1];
+                    if (r + 1 < belowRows) {
+                        sum += below[(r + 1) * belowColumns + c];
+                        if (c + 1 < belowColumns)
+                            sum += below[(r + 1) * belowColumns + c + 1];
+                    }
+                    level[br * levelColumns + bc] = sum;
+                }
+            }
+        }
+        stale = false;
+    }
+
+    // The number of set bits in each byte of x, in that byte
+    private static long bytePopCount(long x) {
+        x = x - ((x >>> 1) & 0x5555555555555555L);
+        x = (x & 0x3333333333333333L) + ((x >>> 2) & 0x3333333333333333L);
+        return (x + (x >>> 4)) & 0x0F0F0F0F0F0F0F0FL;
+    }
+}
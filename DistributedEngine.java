@@ -0,0 +1,403 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The coordinator of a torus split across several processes, for boards too big for one machine's memory.
+ *
+ * The rows are split into strips as evenly as possible, one per DistributedWorker, and each worker holds only its
+ * strip plus halo rows copied from its neighbours. Workers exchange halos directly with each other; this class
+ * tells them what to do and sums up what they answer. Every step waits for all workers to finish the generation
+ * (a barrier), so the population, changed cells and hash are always those of one generation.
+ *
+ * With a halo of k rows the workers exchange halos only every k generations, trading k times fewer rounds of
+ * messages for stepping k - 1 extra rows on each side of each strip per generation (see DistributedWorker).
+ * Every strip must have at least k rows. advance runs many generations with one barrier per k of them, so the
+ * workers only wait for each other and for the coordinator when they exchange halos anyway.
+ *
+ * Edits are sent to the worker owning the cell in batches, so Simulation.randomise or loading a pattern does not
+ * make a round trip per cell; isAlive does make one, so whole boards should be read with copyTo. Losing a worker
+ * throws UncheckedIOException from whichever method next talks to it.
+ */
+public class DistributedEngine implements Engine, AutoCloseable {
+
+    private static final int EDIT_BATCH = 1 << 16;  // Edits sent to a worker at once, well within a message
+
+    private final int rows;
+    private final int columns;
+    private final int words;                // Longs per row
+    private final int halo;                 // Rows of halo, the generations stepped between exchanges
+    private final int[] firstRows;          // Worker i owns rows firstRows[i] to firstRows[i + 1] (exclusive)
+    private final SocketChannel[] workers;  // Control channels, blocking
+    private final List<Process> processes;  // Workers started by launch, empty for workers started elsewhere
+    private final ByteBuffer message = ByteBuffer.allocateDirect(DistributedWorker.MESSAGE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private final LongBuffer messageLongs = message.asLongBuffer();
+    private final long[][] edits;           // Edits waiting to be sent to each worker, packed as DistributedWorker.edit reads them
+    private final int[] editCounts;
+    private final long[] populations;       // The last answer of each worker
+    private final long[] changes;
+    private final long[] hashes;
+    private Rule rule = Rule.CONWAY;
+    private boolean edited = true;          // Halos must be exchanged before the next step, because strips were changed
+
+
+    /*
+     * Start the given number of workers as local processes, using the same Java and class path as this one, and
+     * split a rows by columns board between them with a halo of haloWidth rows.
+     */
+    public static DistributedEngine launch(int rows, int columns, int workers, int haloWidth) throws IOException {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress("localhost", 0));
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            String port = String.valueOf(((InetSocketAddress) server.getLocalAddress()).getPort());
+            List<Process> processes = new ArrayList<>();
+            try {
+                for (int i = 0; i < workers; i++)
+                    processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                            "DistributedWorker", "localhost", port).inheritIO().start());
+                return new DistributedEngine(rows, columns, workers, haloWidth, server, processes);
+            } catch (IOException | RuntimeException e) {
+                for (Process process : processes)
+                    process.destroy();
+                throw e;
+            }
+        }
+    }
+
+    /*
+     * Wait for the given number of workers, started by hand with "java DistributedWorker HOST PORT" on any machine
+     * that can reach this one, and split a rows by columns board between them with a halo of haloWidth rows.
+     */
+    public static DistributedEngine listen(int port, int rows, int columns, int workers, int haloWidth) throws IOException {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(port));
+            return new DistributedEngine(rows, columns, workers, haloWidth, server, new ArrayList<>());
+        }
+    }
+
+    private DistributedEngine(int rows, int columns, int workerCount, int haloWidth, ServerSocketChannel server,
+                              List<Process> processes) throws IOException {
+        if (workerCount < 1 || haloWidth < 1 || rows < (long) workerCount * haloWidth)
+            throw new IllegalArgumentException("A board of " + rows + " rows can not be split into " + workerCount
+                    + " strips of at least " + haloWidth + " rows");
+        this.rows = rows;
+        this.columns = columns;
+        this.processes = processes;
+        words = (columns + 63) >>> 6;
+        halo = haloWidth;
+        firstRows = new int[workerCount + 1];
+        for (int i = 0; i <= workerCount; i++)
+            firstRows[i] = (int) ((long) rows * i / workerCount);
+        workers = new SocketChannel[workerCount];
+        edits = new long[workerCount][EDIT_BATCH];
+        editCounts = new int[workerCount];
+        populations = new long[workerCount];
+        changes = new long[workerCount];
+        hashes = new long[workerCount];
+
+        // Workers are numbered in the order they connect, and each says where its neighbour above can reach it
+        String[] hosts = new String[workerCount];
+        int[] ports = new int[workerCount];
+        server.socket().setSoTimeout(DistributedWorker.TIMEOUT);
+        try {
+            for (int i = 0; i < workerCount; i++) {
+                Socket socket = server.socket().accept();
+                workers[i] = socket.getChannel();
+                workers[i].socket().setTcpNoDelay(true);
+                hosts[i] = socket.getInetAddress().getHostAddress();
+                message.clear().limit(4);
+                DistributedWorker.read(workers[i], message);
+                ports[i] = message.getInt(0);
+            }
+            for (int i = 0; i < workerCount; i++) {
+                int below = (i + 1) % workerCount;
+                message.clear();
+                message.putInt(DistributedWorker.SETUP).putInt(rows).putInt(columns).putInt(firstRows[i])
+                        .putInt(firstRows[i + 1]).putInt(halo).putInt(i).putInt(workerCount).putInt(ports[below]);
+                putString(hosts[below]);
+                putString(rule.toString());
+                DistributedWorker.write(workers[i], message);
+            }
+            replies();
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    // Return the number of worker processes
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    public boolean isAlive(int row, int col) {
+        flush();
+        int worker = owner(row);
+        try {
+            message.clear();
+            message.putInt(DistributedWorker.GET).putInt(row).putInt(col);
+            DistributedWorker.write(workers[worker], message);
+            reply(worker);
+            message.clear().limit(4);
+            DistributedWorker.read(workers[worker], message);
+            return message.getInt(0) != 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void setAlive(int row, int col, boolean alive) {
+        if (row < 0 || row >= rows || col < 0 || col >= columns)
+            throw new IndexOutOfBoundsException("No cell at row " + row + ", column " + col);
+        int worker = owner(row);
+        edits[worker][editCounts[worker]++] = (long) row << 32 | (long) col << 1 | (alive ? 1 : 0);
+        if (editCounts[worker] == EDIT_BATCH)
+            flush(worker);
+    }
+
+    public void clear() {
+        Arrays.fill(editCounts, 0);
+        command(DistributedWorker.CLEAR);
+        edited = true;
+    }
+
+    // Compute the next generation on every worker, and wait for them all
+    public void step() {
+        advance(1);
+    }
+
+    /*
+     * Compute the given number of generations, telling the workers to step as many as the halo allows at a time
+     * and waiting for them only then, rather than after every generation as step does.
+     */
+    public void advance(long generations) {
+        flush();
+        try {
+            while (generations > 0) {
+                int batch = (int) Math.min(generations, halo);
+                for (SocketChannel worker : workers) {
+                    message.clear();
+                    message.putInt(DistributedWorker.STEP).putInt(batch).putInt(edited ? 1 : 0);
+                    DistributedWorker.write(worker, message);
+                }
+                replies();
+                edited = false;
+                generations -= batch;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Rule getRule() {
+        return rule;
+    }
+
+    public void setRule(Rule rule) {
+        flush();
+        try {
+            for (SocketChannel worker : workers) {
+                message.clear();
+                message.putInt(DistributedWorker.RULE);
+                putString(rule.toString());
+                DistributedWorker.write(worker, message);
+            }
+            replies();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.rule = rule;
+    }
+
+    public long getPopulation() {
+        flush();
+        long population = 0;
+        for (long p : populations)
+            population += p;
+        return population;
+    }
+
+    public long getChangedCells() {
+        long changed = 0;
+        for (long c : changes)
+            changed += c;
+        return changed;
+    }
+
+    // The sum of the strips' hashes, which is the hash PackedEngine keeps for the same board
+    public long getHash() {
+        flush();
+        long hash = 0;
+        for (long h : hashes)
+            hash += h;
+        return hash;
+    }
+
+    // Fetch every strip, a chunk at a time
+    public void copyTo(long[] packed) {
+        flush();
+        try {
+            for (int i = 0; i < workers.length; i++) {
+                message.clear();
+                message.putInt(DistributedWorker.READ);
+                DistributedWorker.write(workers[i], message);
+                reply(i);
+                int offset = firstRows[i] * words;
+                int length = (firstRows[i + 1] - firstRows[i]) * words;
+                for (int done = 0; done < length; ) {
+                    int chunk = Math.min(length - done, DistributedWorker.MESSAGE_BYTES / 8);
+                    message.clear().limit(chunk * 8);
+                    DistributedWorker.read(workers[i], message);
+                    messageLongs.clear();
+                    messageLongs.get(packed, offset + done, chunk);
+                    done += chunk;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Send every strip, a chunk at a time
+    public void copyFrom(long[] packed) {
+        Arrays.fill(editCounts, 0);
+        try {
+            for (int i = 0; i < workers.length; i++) {
+                message.clear();
+                message.putInt(DistributedWorker.WRITE);
+                DistributedWorker.write(workers[i], message);
+                int offset = firstRows[i] * words;
+                int length = (firstRows[i + 1] - firstRows[i]) * words;
+                for (int done = 0; done < length; ) {
+                    int chunk = Math.min(length - done, DistributedWorker.MESSAGE_BYTES / 8);
+                    message.clear();
+                    messageLongs.clear();
+                    messageLongs.put(packed, offset + done, chunk);
+                    message.position(chunk * 8);
+                    DistributedWorker.write(workers[i], message);
+                    done += chunk;
+                }
+            }
+            replies();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        edited = true;
+    }
+
+    // Tell the workers to exit and wait for those started by launch
+    public void close() {
+        for (SocketChannel worker : workers) {
+            if (worker == null)
+                continue;
+            try {
+                message.clear();
+                message.putInt(DistributedWorker.QUIT);
+                DistributedWorker.write(worker, message);
+                worker.close();
+            } catch (IOException e) {
+                // Already gone
+            }
+        }
+        for (Process process : processes) {
+            try {
+                if (!process.waitFor(5, TimeUnit.SECONDS))
+                    process.destroy();
+            } catch (InterruptedException e) {
+                process.destroy();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    // The worker owning a row
+    private int owner(int row) {
+        int worker = (int) ((long) row * workers.length / rows);   // Strips are even, so this is right or one too low
+        while (row >= firstRows[worker + 1])
+            worker++;
+        return worker;
+    }
+
+    // Send the edits waiting for every worker
+    private void flush() {
+        for (int i = 0; i < workers.length; i++)
+            if (editCounts[i] > 0)
+                flush(i);
+    }
+
+    // Send the edits waiting for one worker
+    private void flush(int worker) {
+        try {
+            message.clear();
+            message.putInt(DistributedWorker.EDIT).putInt(editCounts[worker]);
+            DistributedWorker.write(workers[worker], message);
+            message.clear();
+            messageLongs.clear();
+            messageLongs.put(edits[worker], 0, editCounts[worker]);
+            message.position(editCounts[worker] * 8);
+            DistributedWorker.write(workers[worker], message);
+            reply(worker);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        editCounts[worker] = 0;
+        edited = true;
+    }
+
+    // Send a command with no arguments to every worker and wait for their answers
+    private void command(int command) {
+        try {
+            for (SocketChannel worker : workers) {
+                message.clear();
+                message.putInt(command);
+                DistributedWorker.write(worker, message);
+            }
+            replies();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Wait for every worker to answer, which is the barrier at the end of a generation
+    private void replies() throws IOException {
+        for (int i = 0; i < workers.length; i++)
+            reply(i);
+    }
+
+    // Read a worker's answer: the population, changed cells and hash of its strip
+    private void reply(int worker) throws IOException {
+        message.clear().limit(DistributedWorker.REPLY_BYTES);
+        DistributedWorker.read(workers[worker], message);
+        populations[worker] = message.getLong(0);
+        changes[worker] = message.getLong(8);
+        hashes[worker] = message.getLong(16);
+    }
+
+    // Add a string to the message as its length and then its bytes
+    private void putString(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        message.putInt(bytes.length).put(bytes);
+    }
+}
@@ -0,0 +1,401 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+ * One process of a DistributedEngine: owns a strip of rows of the board and steps it.
+ *
+ * The strip is stored packed as in PackedEngine, with halo rows above and below it: copies of the last rows of the
+ * strip above and the first rows of the strip below (the board is a torus, so the first strip's neighbour above is
+ * the last strip). With a halo of k rows, the rows just outside the strip can be stepped locally as well, so after
+ * one exchange the worker can compute k generations on its own: each generation the band of rows it knows shrinks
+ * by one on each side, until only the strip itself is left and the halos are exchanged again.
+ *
+ * Halos go straight to the neighbouring workers over their own socket channels, from direct buffers, both ways at
+ * once through a Selector so no worker waits on another's full socket buffer. The coordinator only sends commands
+ * and waits for every worker to answer before the next generation, or the next halo's worth of generations, which
+ * is the barrier.
+ *
+ * Usage: java DistributedWorker HOST PORT
+ * connects to the coordinator listening on HOST:PORT, does what it says and exits when it disconnects.
+ */
+public class DistributedWorker {
+
+    // Commands from the coordinator, each answered by population, changed cells and hash of the strip (see reply)
+    static final int SETUP = 1;   // Sizes, strip, halo, rule and the address of the worker below, then connect to it
+    static final int STEP = 2;    // Compute some generations, exchanging halos first if asked or when they run out
+    static final int EDIT = 3;    // Set cells of the strip, each packed by edit
+    static final int GET = 4;     // Whether a cell is alive, sent after the reply as an int
+    static final int CLEAR = 5;   // Set every cell of the strip to dead
+    static final int RULE = 6;    // Change the rule
+    static final int READ = 7;    // Send the packed rows of the strip after the reply
+    static final int WRITE = 8;   // Replace the strip with packed rows sent after the command
+    static final int QUIT = 9;    // Exit
+
+    static final int REPLY_BYTES = 24;         // Population, changed cells and hash
+    static final int MESSAGE_BYTES = 1 << 20;  // The largest message, and the chunk size for READ and WRITE
+    static final int TIMEOUT = 30_000;         // Milliseconds to wait for a neighbour to connect
+
+    private final SocketChannel control;       // To the coordinator, blocking
+    private final ServerSocketChannel peers;   // Where the worker above connects
+    private final ByteBuffer message = ByteBuffer.allocateDirect(MESSAGE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private final LongBuffer messageLongs = message.asLongBuffer();
+
+    private int rows;                 // The whole board
+    private int columns;
+    private int words;                // Longs per row
+    private int from;                 // The first row of the board in the strip
+    private int stripRows;            // The number of rows in the strip
+    private int halo;                 // Rows of halo on each side
+    private int index;                // Which strip this is, counting from the top
+    private int workers;              // The number of strips
+    private Rule rule;
+
+    private long[] cells;             // The strip with halo rows: local row halo is board row from
+    private long[] next;              // The next generation is written here, then the two arrays are swapped
+    private int margin;               // Rows on each side of the strip that hold the current generation
+    private long[] rowKeys;           // Zobrist keys of the strip's rows (by board row) and of the words in a row
+    private long[] columnKeys;
+    private long[] rowSums;           // The hash of each row of the strip without its row key, as in PackedEngine
+    private long population;          // Live cells in the strip
+    private long changedCells;        // Cells of the strip born or died in the last generation
+    private long hash;                // The strip's part of the board's hash, see Zobrist
+
+    private SocketChannel up;         // To the worker above, null if there is only one worker
+    private SocketChannel down;       // To the worker below
+    private Selector selector;        // Waits on both neighbours during an exchange
+    private SelectionKey upKey;
+    private SelectionKey downKey;
+    private ByteBuffer sendUp;        // The first halo rows of the strip, for the worker above
+    private ByteBuffer sendDown;      // The last halo rows of the strip, for the worker below
+    private ByteBuffer receiveUp;     // The halo above the strip, from the worker above
+    private ByteBuffer receiveDown;   // The halo below the strip, from the worker below
+
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: java DistributedWorker HOST PORT");
+            System.exit(2);
+        }
+        try (SocketChannel control = SocketChannel.open(new InetSocketAddress(args[0], Integer.parseInt(args[1])));
+             ServerSocketChannel peers = ServerSocketChannel.open()) {
+            control.socket().setTcpNoDelay(true);  // A reply followed by a strip must not wait for the reply's ack
+            peers.bind(new InetSocketAddress(0));
+            new DistributedWorker(control, peers).run();
+        } catch (EOFException e) {
+            // The coordinator has gone, so there is nothing left to do
+        }
+    }
+
+    private DistributedWorker(SocketChannel control, ServerSocketChannel peers) {
+        this.control = control;
+        this.peers = peers;
+    }
+
+    // Say which port the neighbour above can connect to, then carry out commands until told to quit
+    private void run() throws IOException {
+        message.clear();
+        message.putInt(((InetSocketAddress) peers.getLocalAddress()).getPort());
+        write(control, message);
+
+        while (true) {
+            int command = readInt();
+            switch (command) {
+                case SETUP:
+                    setup();
+                    break;
+                case STEP:
+                    int generations = readInt();
+                    if (readInt() != 0)
+                        margin = 0;   // A strip was edited, so every halo is out of date
+                    for (int g = 0; g < generations; g++)
+                        step();
+                    break;
+                case EDIT:
+                    edit(readInt());
+                    break;
+                case GET:
+                    int row = readInt() - from + halo;
+                    int col = readInt();
+                    reply();
+                    message.clear();
+                    message.putInt((cells[row * words + (col >>> 6)] & (1L << col)) != 0 ? 1 : 0);
+                    write(control, message);
+                    continue;
+                case CLEAR:
+                    Arrays.fill(cells, 0L);
+                    Arrays.fill(rowSums, 0L);
+                    population = 0;
+                    hash = 0;
+                    margin = 0;
+                    break;
+                case RULE:
+                    rule = Rule.parse(readString());
+                    break;
+                case READ:
+                    reply();
+                    sendStrip();
+                    continue;
+                case WRITE:
+                    receiveStrip();
+                    break;
+                case QUIT:
+                    return;
+                default:
+                    throw new IOException("Unknown command " + command);
+            }
+            reply();
+        }
+    }
+
+
+    // Take the sizes, strip and rule, and connect to the workers above and below
+    private void setup() throws IOException {
+        rows = readInt();
+        columns = readInt();
+        from = readInt();
+        stripRows = readInt() - from;
+        halo = readInt();
+        index = readInt();
+        workers = readInt();
+        int belowPort = readInt();
+        String belowHost = readString();
+        rule = Rule.parse(readString());
+
+        words = (columns + 63) >>> 6;
+        cells = new long[(stripRows + 2 * halo) * words];
+        next = new long[cells.length];
+        rowKeys = new long[stripRows];
+        for (int r = 0; r < stripRows; r++)
+            rowKeys[r] = Zobrist.key(from + r);
+        columnKeys = Zobrist.keys(words);
+        rowSums = new long[stripRows];
+        margin = 0;
+
+        if (workers > 1) {
+            // Connect down first: the worker below is already listening, so this can not wait on it
+            down = SocketChannel.open(new InetSocketAddress(belowHost, belowPort));
+            message.clear();
+            message.putInt(index);
+            write(down, message);
+            peers.socket().setSoTimeout(TIMEOUT);
+            Socket accepted = peers.socket().accept();
+            up = accepted.getChannel();
+            message.clear().limit(4);
+            read(up, message);
+            int above = message.getInt(0);
+            if (above != (index + workers - 1) % workers)
+                throw new IOException("Expected worker " + (index + workers - 1) % workers + " above but worker " + above + " connected");
+
+            int haloBytes = halo * words * 8;
+            sendUp = ByteBuffer.allocateDirect(haloBytes).order(ByteOrder.LITTLE_ENDIAN);
+            sendDown = ByteBuffer.allocateDirect(haloBytes).order(ByteOrder.LITTLE_ENDIAN);
+            receiveUp = ByteBuffer.allocateDirect(haloBytes).order(ByteOrder.LITTLE_ENDIAN);
+            receiveDown = ByteBuffer.allocateDirect(haloBytes).order(ByteOrder.LITTLE_ENDIAN);
+            selector = Selector.open();
+            up.configureBlocking(false);
+            down.configureBlocking(false);
+            up.socket().setTcpNoDelay(true);
+            down.socket().setTcpNoDelay(true);
+            upKey = up.register(selector, 0);
+            downKey = down.register(selector, 0);
+        }
+    }
+
+
+    /*
+     * Compute the next generation of the strip, and of the halo rows still known. Rows are stepped as in
+     * PackedEngine.stepRows, with the row above and below taken from the local rows rather than wrapping.
+     */
+    private void step() throws IOException {
+        if (margin == 0) {
+            exchange();
+            margin = halo;
+        }
+        margin--;   // The outermost known rows have no known neighbour outside them, so they can not be stepped
+        long changed = 0;
+        long live = 0;
+        long stripHash = 0;
+        for (int lr = halo - margin; lr < halo + stripRows + margin; lr++) {
+            int row = lr * words;
+            boolean own = lr >= halo && lr < halo + stripRows;
+            long sum = 0;
+            for (int w = 0; w < words; w++) {
+                long word = PackedEngine.stepWord(cells, row - words, row, row + words, w, words, columns, rule);
+                if (own) {
+                    changed += Long.bitCount(word ^ cells[row + w]);
+                    live += Long.bitCount(word);
+                    sum += Zobrist.spread(word) * columnKeys[w];
+                }
+                next[row + w] = word;
+            }
+            if (own) {
+                rowSums[lr - halo] = sum;
+                stripHash += rowKeys[lr - halo] * sum;
+            }
+        }
+        long[] old = cells; // Swap the boards
+        cells = next;
+        next = old;
+        changedCells = changed;
+        population = live;
+        hash = stripHash;
+    }
+
+    // Fill the halos from the neighbouring strips, and send them this strip's edge rows
+    private void exchange() throws IOException {
+        int haloLongs = halo * words;
+        int top = halo * words;                   // The first row of the strip
+        int bottom = stripRows * words;           // The first of the last halo rows of the strip
+        int below = (halo + stripRows) * words;   // The first row of the halo below
+        if (workers == 1) {  // The strip is the whole board, so it wraps around onto itself
+            System.arraycopy(cells, bottom, cells, 0, haloLongs);
+            System.arraycopy(cells, top, cells, below, haloLongs);
+            return;
+        }
+        put(sendUp, cells, top, haloLongs);
+        put(sendDown, cells, bottom, haloLongs);
+        sendUp.flip();
+        sendDown.flip();
+        receiveUp.clear();
+        receiveDown.clear();
+        while (sendUp.hasRemaining() || sendDown.hasRemaining() || receiveUp.hasRemaining() || receiveDown.hasRemaining()) {
+            upKey.interestOps((sendUp.hasRemaining() ? SelectionKey.OP_WRITE : 0) | (receiveUp.hasRemaining() ? SelectionKey.OP_READ : 0));
+            downKey.interestOps((sendDown.hasRemaining() ? SelectionKey.OP_WRITE : 0) | (receiveDown.hasRemaining() ? SelectionKey.OP_READ : 0));
+            selector.select();
+            transfer(upKey, up, sendUp, receiveUp);
+            transfer(downKey, down, sendDown, receiveDown);
+            selector.selectedKeys().clear();
+        }
+        receiveUp.flip();
+        receiveUp.asLongBuffer().get(cells, 0, haloLongs);
+        receiveDown.flip();
+        receiveDown.asLongBuffer().get(cells, below, haloLongs);
+    }
+
+    // Move whatever the channel of a ready key can take or give without waiting
+    private static void transfer(SelectionKey key, SocketChannel channel, ByteBuffer send, ByteBuffer receive) throws IOException {
+        if (!key.isValid() || !key.isReadable() && !key.isWritable())
+            return;
+        if (key.isWritable() && send.hasRemaining())
+            channel.write(send);
+        if (key.isReadable() && receive.hasRemaining() && channel.read(receive) < 0)
+            throw new EOFException("A neighbouring worker disconnected");
+    }
+
+    // Replace what is in a direct buffer with longs, leaving its position after them as a relative put would
+    private static void put(ByteBuffer buffer, long[] values, int offset, int length) {
+        buffer.clear();
+        buffer.asLongBuffer().put(values, offset, length);
+        buffer.position(length * 8);
+    }
+
+
+    // Apply edits, each a board row in the high 32 bits, then the column and whether the cell is alive
+    private void edit(int count) throws IOException {
+        message.clear().limit(count * 8);
+        read(control, message);
+        for (int e = 0; e < count; e++) {
+            long edit = message.getLong(e * 8);
+            int r = (int) (edit >>> 32) - from;
+            int col = (int) edit >>> 1;
+            int i = (r + halo) * words + (col >>> 6);
+            long old = cells[i];
+            if ((edit & 1) != 0)
+                cells[i] |= 1L << col;
+            else
+                cells[i] &= ~(1L << col);
+            long change = columnKeys[col >>> 6] * (Zobrist.spread(cells[i]) - Zobrist.spread(old));
+            rowSums[r] += change;
+            hash += rowKeys[r] * change;
+            population += Long.bitCount(cells[i]) - Long.bitCount(old);
+        }
+        margin = 0;
+    }
+
+    // Send the rows of the strip to the coordinator, a chunk at a time
+    private void sendStrip() throws IOException {
+        int length = stripRows * words;
+        for (int done = 0; done < length; ) {
+            int chunk = Math.min(length - done, MESSAGE_BYTES / 8);
+            put(message, cells, halo * words + done, chunk);
+            write(control, message);
+            done += chunk;
+        }
+    }
+
+    // Replace the rows of the strip with rows from the coordinator
+    private void receiveStrip() throws IOException {
+        int length = stripRows * words;
+        for (int done = 0; done < length; ) {
+            int chunk = Math.min(length - done, MESSAGE_BYTES / 8);
+            message.clear().limit(chunk * 8);
+            read(control, message);
+            messageLongs.clear();
+            messageLongs.get(cells, halo * words + done, chunk);
+            done += chunk;
+        }
+        population = 0;
+        hash = 0;
+        for (int r = 0; r < stripRows; r++) {
+            int row = (r + halo) * words;
+            if ((columns & 63) != 0)
+                cells[row + words - 1] &= (1L << columns) - 1;  // Keep the bits past the last column at 0
+            for (int w = 0; w < words; w++)
+                population += Long.bitCount(cells[row + w]);
+            rowSums[r] = Zobrist.row(cells, row, words, columnKeys);
+            hash += rowKeys[r] * rowSums[r];
+        }
+        margin = 0;
+    }
+
+
+    // Answer a command with the state of the strip
+    private void reply() throws IOException {
+        message.clear();
+        message.putLong(population).putLong(changedCells).putLong(hash);
+        write(control, message);
+    }
+
+    private int readInt() throws IOException {
+        message.clear().limit(4);
+        read(control, message);
+        return message.getInt(0);
+    }
+
+    // A string sent as its length and then its bytes
+    private String readString() throws IOException {
+        int length = readInt();
+        message.clear().limit(length);
+        read(control, message);
+        byte[] bytes = new byte[length];
+        message.flip();
+        message.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    // Fill the rest of the buffer from a blocking channel
+    static void read(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            if (channel.read(buffer) < 0)
+                throw new EOFException("Disconnected");
+    }
+
+    // Write everything put into the buffer since it was cleared to a blocking channel
+    static void write(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+}
@@ -0,0 +1,125 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/*
+ * Steps a board of rows by columns cells whose edges wrap around (a torus), as described in the ReadMe.
+ * Board only talks to the simulation through this interface, so different stepping strategies can be
+ * selected at start up and cross-checked against each other (see EngineCheck).
+ */
+public interface Engine {
+
+    // Return the number of rows on the board
+    int getRows();
+
+    // Return the number of columns on the board
+    int getColumns();
+
+    // Return true if the cell in the given row and column is alive
+    boolean isAlive(int row, int col);
+
+    // Make the cell in the given row and column alive or dead
+    void setAlive(int row, int col, boolean alive);
+
+    // Set every cell on the board to dead
+    void clear();
+
+    // Replace the board with the next generation
+    void step();
+
+    // Return the rule the board is stepped with, B3/S23 unless it was changed
+    Rule getRule();
+
+    // Change the rule used from the next step on
+    void setRule(Rule rule);
+
+    // Return the number of live cells on the board
+    long getPopulation();
+
+    // Return the number of cells that were born or died in the last step, or -1 if the engine does not count them
+    long getChangedCells();
+
+    /*
+     * Return a 64 bit hash of the board, which is kept up to date as cells change rather than computed from the
+     * whole board. Equal boards of one engine hash the same, so a repeated hash means the board has (almost
+     * certainly) been seen before (see CycleDetector). Hashes are not comparable between engines.
+     */
+    long getHash();
+
+    /*
+     * Copy the board into packed rows, 64 cells to a long as in PackedEngine:
+     * bit (c & 63) of packed[row * words + (c >> 6)] is set if the cell is alive, where words = (columns + 63) / 64.
+     */
+    default void copyTo(long[] packed) {
+        int words = (getColumns() + 63) >>> 6;
+        Arrays.fill(packed, 0, getRows() * words, 0L);
+        for (int r = 0; r < getRows(); r++)
+            for (int c = 0; c < getColumns(); c++)
+                if (isAlive(r, c))
+                    packed[r * words + (c >>> 6)] |= 1L << c;
+    }
+
+    /*
+     * Replace the board with packed rows laid out as in copyTo. Engines that show a window of a larger universe
+     * clear the whole universe first.
+     */
+    default void copyFrom(long[] packed) {
+        int words = (getColumns() + 63) >>> 6;
+        clear();
+        for (int r = 0; r < getRows(); r++)
+            for (int w = 0; w < words; w++)
+                for (long word = packed[r * words + w]; word != 0; word &= word - 1) { // Visit every live cell
+                    int c = w * 64 + Long.numberOfTrailingZeros(word);
+                    if (c < getColumns())
+                        setAlive(r, c, true);
+                }
+    }
+
+
+    /*
+     *  Create the engine with the given name.
+     *  "naive"  - the original boolean[][] stepper, kept as the reference implementation.
+     *  "packed" - 64 cells per long, stepped with bitwise adders.
+     *  "parallel" or "parallel:N" - the packed engine stepped in bands on N threads (all processors by default).
+     *  "vector" - the packed engine stepped with the Vector API, or the scalar loop if the module is not added.
+     *  "active" - the packed engine, skipping tiles whose neighbourhood is still or blinking.
+     *  "hashlife" or "hashlife:N" - a window onto an unbounded universe stepped with HashLife, the edges do not wrap.
+     *               Its node cache holds about N nodes (about four million by default).
+     *  "sparse" - a window onto an unbounded universe that stores only its live cells, the edges do not wrap.
+     *  "distributed:N" or "distributed:N:K" - strips of the board stepped by N worker processes on this machine,
+     *               exchanging halos of K rows (1 by default) every K generations.
+     */
+    static Engine create(String name, int rows, int columns) {
+        if (name.startsWith("parallel:"))
+            return new ParallelEngine(rows, columns, Integer.parseInt(name.substring("parallel:".length())));
+        if (name.startsWith("hashlife:"))
+            return new WindowEngine(new HashLife(Long.parseLong(name.substring("hashlife:".length()))), rows, columns);
+        if (name.startsWith("distributed:")) {
+            String[] parts = name.split(":");
+            try {
+                return DistributedEngine.launch(rows, columns, Integer.parseInt(parts[1]),
+                        parts.length > 2 ? Integer.parseInt(parts[2]) : 1);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not start the workers: " + e.getMessage(), e);
+            }
+        }
+        switch (name) {
+            case "naive":
+                return new NaiveEngine(rows, columns);
+            case "packed":
+                return new PackedEngine(rows, columns);
+            case "parallel":
+                return new ParallelEngine(rows, columns, Runtime.getRuntime().availableProcessors());
+            case "vector":
+                return new VectorEngine(rows, columns);
+            case "active":
+                return new ActiveEngine(rows, columns);
+            case "hashlife":
+                return new WindowEngine(new HashLife(1L << 22), rows, columns);
+            case "sparse":
+                return new WindowEngine(new SparseUniverse(), rows, columns);
+            default:
+                throw new IllegalArgumentException("Unknown engine: " + name);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+import java.util.Random;
+
+/*
+ * Cross-checks engines against the naive reference stepper, under several rules.
+ * Each engine is seeded with the same random board (10% alive, like the Randomise button), stepped alongside a
+ * NaiveEngine and compared cell by cell, and on population and changed cells, after every generation. Sizes on
+ * either side of a 64 cell word are included to exercise the wrap-around at the edges of packed rows, and rows of
+ * 16 and 18 words so VectorEngine steps whole vectors of words and has words left over.
+ * At the end the hash each engine kept up to date while stepping is checked against a fresh engine given the
+ * same board, as CycleDetector relies on equal boards hashing the same.
+ * One engine (and one fresh engine) of each size is cleared and reused for every rule and seed, so the distributed
+ * engine starts its workers once per size rather than once per board. Boards compare through copyTo, which the
+ * distributed engine answers with one message per worker rather than one per cell. Sizes with fewer rows than
+ * distributed:N:K can split into N strips of K rows are skipped for it.
+ * Every generation of the distributed engine is a round trip to its workers, so it is checked on fewer sizes and
+ * seeds (still either side of a word and of a strip), and each board ends with a batch run through advance.
+ *
+ * Usage: java EngineCheck [engine ...]
+ */
+public class EngineCheck {
+
+    private static final int[] SIZES = {1, 2, 3, 63, 64, 65, 100, 130, 200};
+    private static final int[] COLUMNS = {1, 2, 3, 63, 64, 65, 100, 130, 200, 1000, 1089};  // Wide rows reach the vector loop of VectorEngine
+    private static final int SEEDS = 5;
+    private static final int[] DISTRIBUTED_SIZES = {2, 3, 6, 7, 65, 130};
+    private static final int[] DISTRIBUTED_COLUMNS = {1, 63, 64, 65, 200};
+    private static final int DISTRIBUTED_SEEDS = 2;
+    private static final int GENERATIONS = 60;
+    private static final int ADVANCE = 7;      // Generations the distributed engine then runs through advance
+    // Conway, HighLife, Seeds, Day & Night, Replicator, and a rule with birth on 0 to exercise boards that fill up
+    private static final String[] RULES = {"B3/S23", "B36/S23", "B2/S", "B3678/S34678", "B1357/S1357", "B0123478/S01234678"};
+
+    public static void main(String[] args) {
+        String[] names = args.length > 0 ? args
+                : new String[]{"packed", "parallel", "parallel:3", "active", "vector", "distributed:2", "distributed:3:2"};
+        int failures = 0;
+        for (String name : names) {
+            int before = failures;
+            boolean distributed = name.startsWith("distributed:");
+            for (int rows : distributed ? DISTRIBUTED_SIZES : SIZES) {
+                if (rows < minimumRows(name))
+                    continue;
+                for (int columns : distributed ? DISTRIBUTED_COLUMNS : COLUMNS) {
+                    Engine engine = Engine.create(name, rows, columns);
+                    Engine fresh = Engine.create(name, rows, columns);
+                    try {
+                        for (String rule : RULES) {
+                            for (int seed = 0; seed < (distributed ? DISTRIBUTED_SEEDS : SEEDS); seed++) {
+                                if (!check(name, engine, fresh, Rule.parse(rule), seed)) {
+                                    failures++;
+                                }
+                            }
+                        }
+                    } finally {
+                        close(engine);
+                        close(fresh);
+                    }
+                }
+            }
+            System.out.println(name + ": " + (failures == before ? "OK" : (failures - before) + " failures"));
+        }
+        if (failures > 0)
+            System.exit(1);
+    }
+
+    // The fewest rows the named engine can have, workers times halo rows for "distributed:N:K"
+    private static int minimumRows(String name) {
+        if (!name.startsWith("distributed:"))
+            return 1;
+        String[] parts = name.split(":");
+        return Integer.parseInt(parts[1]) * (parts.length > 2 ? Integer.parseInt(parts[2]) : 1);
+    }
+
+    // Stop the workers of a distributed engine
+    private static void close(Engine engine) {
+        if (engine instanceof DistributedEngine)
+            ((DistributedEngine) engine).close();
+    }
+
+    // Step the engine and the reference from the same random board and report the first difference
+    private static boolean check(String name, Engine engine, Engine fresh, Rule rule, long seed) {
+        int rows = engine.getRows(), columns = engine.getColumns();
+        Engine reference = new NaiveEngine(rows, columns);
+        reference.setRule(rule);
+        engine.clear();
+        engine.setRule(rule);
+        Random random = new Random(seed);
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                boolean alive = random.nextDouble() < 0.10;
+                reference.setAlive(r, c, alive);
+                engine.setAlive(r, c, alive);
+            }
+        }
+
+        int words = (columns + 63) >>> 6;
+        long[] expected = new long[rows * words];
+        long[] packed = new long[rows * words];
+        for (int g = 1; g <= GENERATIONS; g++) {
+            reference.step();
+            engine.step();
+            if (!same(name, engine, reference, rule, seed, g, expected, packed))
+                return false;
+        }
+        if (engine instanceof DistributedEngine) {  // A batch, with one barrier per halo exchange
+            ((DistributedEngine) engine).advance(ADVANCE);
+            for (int g = 0; g < ADVANCE; g++)
+                reference.step();
+            if (!same(name, engine, reference, rule, seed, GENERATIONS + ADVANCE, expected, packed))
+                return false;
+        }
+
+        fresh.setRule(rule);
+        fresh.copyFrom(packed);
+        if (fresh.getHash() != engine.getHash()) {
+            System.out.println(name + " hash differs from a fresh board under " + rule + " on " + rows + "x" + columns
+                    + " board, seed " + seed);
+            return false;
+        }
+        return true;
+    }
+
+    // Compare the engine with the reference, leaving their packed boards in packed and expected, and report a difference
+    private static boolean same(String name, Engine engine, Engine reference, Rule rule, long seed, int generation,
+                                long[] expected, long[] packed) {
+        int rows = engine.getRows(), columns = engine.getColumns();
+        int words = (columns + 63) >>> 6;
+        if (engine.getPopulation() != reference.getPopulation() || engine.getChangedCells() != reference.getChangedCells()) {
+            System.out.println(name + " counts differ from naive under " + rule + " on " + rows + "x" + columns + " board, seed "
+                    + seed + ", generation " + generation);
+            return false;
+        }
+        reference.copyTo(expected);
+        engine.copyTo(packed);
+        for (int i = 0; i < packed.length; i++) {
+            if (packed[i] != expected[i]) {
+                int r = i / words, c = (i % words) * 64 + Long.numberOfTrailingZeros(packed[i] ^ expected[i]);
+                System.out.println(name + " differs from naive under " + rule + " on " + rows + "x" + columns + " board, seed "
+                        + seed + ", generation " + generation + " at row " + r + ", column " + c);
+                return false;
+            }
+        }
+        return true;
+    }
+}
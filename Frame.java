@@ -0,0 +1,67 @@
+/*
+ * A snapshot of the board taken between generations, for drawing on the Event Dispatch Thread while the
+ * simulation carries on. Cells are packed the same way as in PackedEngine: bit (c & 63) of word
+ * row * getWords() + (c >> 6) holds row, column c.
+ *
+ * Frames are recycled by FramePipeline: a frame is only written by the simulation thread before it is published,
+ * and never changes while the renderer holds it.
+ */
+public final class Frame {
+
+    private final int rows;          // The number of rows on the board
+    private final int columns;       // The number of columns on the board
+    private final int words;         // The number of longs used to store one row
+    private final long[] cells;      // The packed cells
+    private long generation;         // The generation the snapshot was taken at
+    private long population;         // The number of live cells
+
+
+    Frame(int rows, int columns) {
+        this.rows = rows;
+        this.columns = columns;
+        words = (columns + 63) >>> 6;
+        cells = new long[rows * words];
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getWords() {
+        return words;
+    }
+
+    // The packed cells. Callers must not change them.
+    public long[] getCells() {
+        return cells;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public long getPopulation() {
+        return population;
+    }
+
+    public boolean isAlive(int row, int col) {
+        return (cells[row * words + (col >>> 6)] & (1L << col)) != 0;
+    }
+
+    // Return true if this frame can hold a snapshot of the engine
+    boolean fits(Engine engine) {
+        return engine.getRows() == rows && engine.getColumns() == columns;
+    }
+
+    // Copy the current generation of the simulation into this frame
+    void capture(Simulation simulation) {
+        Engine engine = simulation.getEngine();
+        engine.copyTo(cells);
+        generation = simulation.getGeneration();
+        population = engine.getPopulation();
+    }
+}
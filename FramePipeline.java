@@ -0,0 +1,50 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * Hands frames from the simulation thread to the renderer through a single slot.
+ * The simulation only takes a snapshot when the renderer has taken the last one, so a fast simulation copies the
+ * board at most once per screen refresh and the generations in between are dropped. Frames are recycled through
+ * a small free list, so a steady run allocates no frames.
+ */
+public class FramePipeline {
+
+    private final AtomicReference<Frame> latest = new AtomicReference<>();       // The frame waiting to be drawn
+    private final ArrayBlockingQueue<Frame> free = new ArrayBlockingQueue<>(3);  // Frames that can be reused
+    private volatile long droppedFrames;   // Generations not shown because the renderer was still behind
+
+
+    /*
+     * Called by the simulation thread after a generation. Unless force is true, nothing is copied while the last
+     * frame is still waiting to be drawn. Force is used when the simulation stops, so the final board is shown.
+     */
+    public void publish(Simulation simulation, boolean force) {
+        if (!force && latest.get() != null) {
+            droppedFrames++;   // Only the simulation thread writes this
+            return;
+        }
+        Frame frame = free.poll();
+        if (frame == null || !frame.fits(simulation.getEngine()))
+            frame = new Frame(simulation.getEngine().getRows(), simulation.getEngine().getColumns());
+        frame.capture(simulation);
+        Frame old = latest.getAndSet(frame);
+        if (old != null) {
+            droppedFrames++;
+            free.offer(old);
+        }
+    }
+
+    // Called by the renderer. Return the newest frame, or null if there is none since the last call.
+    public Frame take() {
+        return latest.getAndSet(null);
+    }
+
+    // Called by the renderer when it has finished with a frame from take
+    public void release(Frame frame) {
+        free.offer(frame);
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+}
@@ -0,0 +1,397 @@
+import java.util.Arrays;
+
+/*
+ * An unbounded (non-wrapping) universe stepped with Gosper's HashLife algorithm.
+ *
+ * The universe is a quadtree whose nodes are hash-consed: two squares with the same contents are always the same
+ * Node object, so repeated structure is stored once. Each node of level L (a square of 2^L by 2^L cells) memoises
+ * its centre square advanced by 2^j generations, and because that result is built from the results of smaller
+ * nodes, the universe can be advanced by 2^k generations in time that depends on the pattern's structure rather
+ * than on k. Any generation count is reached by jumping the powers of two in its binary form.
+ *
+ * The node cache is bounded. Once it has grown past the limit, the next time a jump or a cell change is finished
+ * every memoised result is dropped and only the nodes reachable from the universe are kept; the rest become garbage.
+ *
+ * Cells are addressed by (x, y) with x the column and y the row. The root square is kept centred on (0, 0).
+ */
+public class HashLife implements Universe {
+
+    /*
+     * A square of 2^level by 2^level cells. Level 0 nodes are single cells (ALIVE and DEAD), every other node
+     * is made of four children one level down.
+     */
+    private static final class Node {
+
+        final int level;
+        final Node nw, ne, sw, se;       // The four quadrants, null for single cells
+        final long population;           // Number of live cells in the square
+        final int hash;                  // Structural hash, children are canonical so it only depends on contents
+
+        Node next;                       // Next node in the same bucket of the cache
+        Node result;                     // Memoised centre square advanced by 2^resultStep generations
+        int resultStep = -1;
+
+        Node(int level, long population, int hash) { // A single cell
+            this.level = level;
+            this.population = population;
+            this.hash = hash;
+            nw = ne = sw = se = null;
+        }
+
+        Node(Node nw, Node ne, Node sw, Node se, int hash) {
+            level = nw.level + 1;
+            this.nw = nw;
+            this.ne = ne;
+            this.sw = sw;
+            this.se = se;
+            population = nw.population + ne.population + sw.population + se.population;
+            this.hash = hash;
+        }
+    }
+
+    private static final Node DEAD = new Node(0, 0, 0x2545F491);
+    private static final Node ALIVE = new Node(0, 1, 0x4F6CDD1D);
+    private static final int MAX_LEVEL = 62;   // Coordinates are longs, so the root can not be bigger than this
+
+    private final long maxNodes;        // The cache is collected when it holds more nodes than this
+    private long collectAt;             // The cache size at which the next collection happens
+    private Node[] table = new Node[1 << 10];  // The node cache, chained hash table with a power of two size
+    private long nodeCount;             // Number of nodes in the cache
+    private final Node[] empty = new Node[MAX_LEVEL + 1];  // The canonical empty square of each level
+    private Node root;                  // The universe, centred on (0, 0)
+    private long generation;            // Number of generations the universe has been advanced
+    private Rule rule = Rule.CONWAY;    // Which cells are born and survive
+    private final byte[] centre = new byte[1 << 16];  // Next generation of the centre 2 by 2 cells of every 4 by 4 square, indexed by the square's cells (bit y * 4 + x)
+
+
+    public HashLife(long maxNodes) {
+        this.maxNodes = maxNodes;
+        collectAt = maxNodes;
+        root = empty(3);
+        buildCentre();
+    }
+
+    public Rule getRule() {
+        return rule;
+    }
+
+    // Change the rule. Every memoised result was computed with the old rule, so they are all dropped.
+    public void setRule(Rule rule) {
+        if (rule.birthOnZero())
+            throw new IllegalArgumentException("Rule " + rule + " would fill the unbounded universe");
+        this.rule = rule;
+        buildCentre();
+        collect();
+    }
+
+    // Fill centre from the rule
+    private void buildCentre() {
+        for (int square = 0; square < centre.length; square++) {
+            int result = 0;
+            for (int i = 0; i < 4; i++) {
+                int x = 1 + (i & 1);
+                int y = 1 + (i >> 1);
+                int neighbourhood = 0;  // The 3 by 3 cells around (x, y), bit (dy + 1) * 3 + (dx + 1) for (x + dx, y + dy)
+                for (int dy = -1; dy <= 1; dy++)
+                    for (int dx = -1; dx <= 1; dx++)
+                        if ((square & (1 << ((y + dy) * 4 + x + dx))) != 0)
+                            neighbourhood |= 1 << ((dy + 1) * 3 + dx + 1);
+                if (rule.next(neighbourhood))
+                    result |= 1 << i;
+            }
+            centre[square] = (byte) result;
+        }
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public long getPopulation() {
+        return root.population;
+    }
+
+    // Generations are computed a square at a time, so births and deaths are not counted
+    public long getChangedCells() {
+        return -1;
+    }
+
+    /*
+     * The structural hash of the smallest square centred on (0, 0) that holds every live cell, mixed with its size
+     * and population, so it does not depend on how far the root happens to have been expanded. Every node carries
+     * its hash already, so this costs a few lookups per step, but the structural hash is only 32 bits: a false
+     * match is more likely than with the other engines, though it still needs two different squares of the same
+     * size and population to collide.
+     */
+    public long getHash() {
+        Node node = root;
+        while (node.level > 3 && node.population != 0 && centre(node).population == node.population)
+            node = centre(node);
+        return Zobrist.mix(((long) node.hash << 32) ^ Zobrist.mix(node.population * 64 + node.level));
+    }
+
+    public void forEachAlive(PatternReader.Sink sink) {
+        long half = 1L << (root.level - 1);
+        forEachAlive(root, -half, -half, sink);
+    }
+
+    // Tell the sink about the live cells of node, whose top left cell is (x, y)
+    private static void forEachAlive(Node node, long x, long y, PatternReader.Sink sink) {
+        if (node.population == 0)
+            return;
+        if (node.level == 0) {
+            sink.cell(x, y);
+            return;
+        }
+        long half = 1L << (node.level - 1);
+        forEachAlive(node.nw, x, y, sink);
+        forEachAlive(node.ne, x + half, y, sink);
+        forEachAlive(node.sw, x, y + half, sink);
+        forEachAlive(node.se, x + half, y + half, sink);
+    }
+
+    // Return the number of nodes in the cache
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    // Set every cell to dead and the generation back to 0
+    public void clear() {
+        root = empty(3);
+        generation = 0;
+        collect();
+    }
+
+    public boolean isAlive(long x, long y) {
+        if (!contains(root, x, y))
+            return false;
+        Node node = root;
+        while (node.level > 0) {
+            if (node.population == 0)
+                return false;
+            long offset = node.level == 1 ? 0 : 1L << (node.level - 2);  // Distance from the centre to the centre of a quadrant
+            if (y < 0) {
+                y += offset;
+                node = x < 0 ? node.nw : node.ne;
+            } else {
+                y -= offset;
+                node = x < 0 ? node.sw : node.se;
+            }
+            x += x < 0 ? offset : -offset;
+        }
+        return node == ALIVE;
+    }
+
+    public void setAlive(long x, long y, boolean alive) {
+        while (!contains(root, x, y))
+            root = expand(root);
+        root = set(root, x, y, alive);
+        collectIfFull();
+    }
+
+
+    /*
+     * Advance the universe by the given number of generations, one power of two at a time.
+     */
+    public void advance(long generations) {
+        if (generations < 0)
+            throw new IllegalArgumentException("Can not step backwards: " + generations);
+        while (generations != 0) {
+            int j = Long.numberOfTrailingZeros(generations);
+            jump(j);
+            collectIfFull();   // Never in the middle of a jump, whose nodes are not reachable from root yet
+            generations &= generations - 1;
+        }
+    }
+
+
+    // Advance the universe by 2^j generations
+    private void jump(int j) {
+        // The result of a level L node is its centre square, which is only big enough to hold everything the pattern
+        // can reach in 2^j generations if the pattern lies in the centre half of a node with L >= j + 3
+        while (root.level < j + 2 || centre(root).population != root.population)
+            root = expand(root);
+        root = successor(expand(root), j);
+        generation += 1L << j;
+    }
+
+
+    /*
+     * Return the centre square of node (one level down) advanced by 2^j generations, where j is at most level - 2.
+     */
+    private Node successor(Node node, int j) {
+        if (node.population == 0)
+            return node.nw;   // An empty square stays empty, and its quadrants are the empty square one level down
+        if (node.level == 2)
+            return centre4x4(node);
+        j = Math.min(j, node.level - 2);
+        if (node.resultStep == j)
+            return node.result;
+
+        // Nine overlapping squares one level down, advanced by 2^j generations (or less, see below)
+        Node n00 = successor(node.nw, j);
+        Node n01 = successor(join(node.nw.ne, node.ne.nw, node.nw.se, node.ne.sw), j);
+        Node n02 = successor(node.ne, j);
+        Node n10 = successor(join(node.nw.sw, node.nw.se, node.sw.nw, node.sw.ne), j);
+        Node n11 = successor(join(node.nw.se, node.ne.sw, node.sw.ne, node.se.nw), j);
+        Node n12 = successor(join(node.ne.sw, node.ne.se, node.se.nw, node.se.ne), j);
+        Node n20 = successor(node.sw, j);
+        Node n21 = successor(join(node.sw.ne, node.se.nw, node.sw.se, node.se.sw), j);
+        Node n22 = successor(node.se, j);
+
+        Node result;
+        if (j < node.level - 2) {
+            // The nine squares are already 2^j generations on, so just take their centres
+            result = join(
+                    join(n00.se, n01.sw, n10.ne, n11.nw),
+                    join(n01.se, n02.sw, n11.ne, n12.nw),
+                    join(n10.se, n11.sw, n20.ne, n21.nw),
+                    join(n11.se, n12.sw, n21.ne, n22.nw));
+        } else {
+            // The nine squares are 2^(j-1) generations on, step the four overlapping quadrants another 2^(j-1)
+            result = join(
+                    successor(join(n00, n01, n10, n11), j),
+                    successor(join(n01, n02, n11, n12), j),
+                    successor(join(n10, n11, n20, n21), j),
+                    successor(join(n11, n12, n21, n22), j));
+        }
+        node.result = result;
+        node.resultStep = j;
+        return result;
+    }
+
+    // One generation of the centre 2 by 2 cells of a 4 by 4 square
+    private Node centre4x4(Node node) {
+        int square = quadrant(node.nw) | quadrant(node.ne) << 2 | quadrant(node.sw) << 8 | quadrant(node.se) << 10;
+        int result = centre[square];
+        return join(cell(result & 1), cell(result & 2), cell(result & 4), cell(result & 8));
+    }
+
+    // The cells of a 2 by 2 square at bits 0, 1, 4 and 5 of a 4 by 4 square
+    private static int quadrant(Node node) {
+        return (int) (node.nw.population | node.ne.population << 1 | node.sw.population << 4 | node.se.population << 5);
+    }
+
+    private static Node cell(int bit) {
+        return bit != 0 ? ALIVE : DEAD;
+    }
+
+    // The square one level down in the centre of node
+    private Node centre(Node node) {
+        return join(node.nw.se, node.ne.sw, node.sw.ne, node.se.nw);
+    }
+
+    // node surrounded by empty space, one level up and with the same centre
+    private Node expand(Node node) {
+        if (node.level >= MAX_LEVEL)
+            throw new IllegalStateException("Universe is too large");
+        Node e = empty(node.level - 1);
+        return join(join(e, e, e, node.nw), join(e, e, node.ne, e), join(e, node.sw, e, e), join(node.se, e, e, e));
+    }
+
+    // Return true if (x, y) lies in node when node is centred on (0, 0)
+    private static boolean contains(Node node, long x, long y) {
+        long half = 1L << (node.level - 1);
+        return x >= -half && x < half && y >= -half && y < half;
+    }
+
+    // node with the cell at (x, y) relative to its centre set
+    private Node set(Node node, long x, long y, boolean alive) {
+        if (node.level == 0)
+            return alive ? ALIVE : DEAD;
+        long offset = node.level == 1 ? 0 : 1L << (node.level - 2);
+        long cx = x < 0 ? x + offset : x - offset;
+        long cy = y < 0 ? y + offset : y - offset;
+        if (y < 0) {
+            if (x < 0)
+                return join(set(node.nw, cx, cy, alive), node.ne, node.sw, node.se);
+            return join(node.nw, set(node.ne, cx, cy, alive), node.sw, node.se);
+        }
+        if (x < 0)
+            return join(node.nw, node.ne, set(node.sw, cx, cy, alive), node.se);
+        return join(node.nw, node.ne, node.sw, set(node.se, cx, cy, alive));
+    }
+
+    private Node empty(int level) {
+        if (empty[level] == null)
+            empty[level] = level == 0 ? DEAD : join(empty(level - 1), empty(level - 1), empty(level - 1), empty(level - 1));
+        return empty[level];
+    }
+
+
+    /*
+     * Return the canonical node with the given quadrants, creating it if it is not in the cache.
+     */
+    private Node join(Node nw, Node ne, Node sw, Node se) {
+        int hash = ((nw.hash * 0x9E3779B1 + ne.hash) * 0x9E3779B1 + sw.hash) * 0x9E3779B1 + se.hash;
+        hash ^= hash >>> 16;
+        int bucket = hash & (table.length - 1);
+        for (Node node = table[bucket]; node != null; node = node.next)
+            if (node.nw == nw && node.ne == ne && node.sw == sw && node.se == se)
+                return node;
+
+        Node node = new Node(nw, ne, sw, se, hash);
+        node.next = table[bucket];
+        table[bucket] = node;
+        if (++nodeCount > table.length * 3L / 4 && table.length < (1 << 30))
+            resize(table.length * 2);
+        return node;
+    }
+
+    private void resize(int size) {
+        Node[] old = table;
+        table = new Node[size];
+        for (Node head : old) {
+            while (head != null) {
+                Node node = head;
+                head = head.next;
+                int bucket = node.hash & (size - 1);
+                node.next = table[bucket];
+                table[bucket] = node;
+            }
+        }
+    }
+
+
+    private void collectIfFull() {
+        if (nodeCount > collectAt)
+            collect();
+    }
+
+    /*
+     * Drop every memoised result and every node that is not part of the universe or an empty square.
+     * If the universe alone is bigger than the limit, the next collection is put off until the cache doubles.
+     */
+    private void collect() {
+        for (Node head : table) {
+            for (Node node = head; node != null; node = node.next) {
+                node.result = null;
+                node.resultStep = -1;
+            }
+        }
+        Arrays.fill(table, null);
+        nodeCount = 0;
+        for (Node e : empty)
+            if (e != null)
+                keep(e);
+        keep(root);
+        collectAt = Math.max(maxNodes, nodeCount * 2);
+    }
+
+    // Put node and everything below it back in the cache
+    private void keep(Node node) {
+        if (node.level == 0)
+            return;
+        int bucket = node.hash & (table.length - 1);
+        for (Node n = table[bucket]; n != null; n = n.next)
+            if (n == node)
+                return;
+        keep(node.nw);
+        keep(node.ne);
+        keep(node.sw);
+        keep(node.se);
+        node.next = table[bucket];
+        table[bucket] = node;
+        nodeCount++;
+    }
+}
@@ -0,0 +1,189 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/*
+ * Runs a simulation with no window, as fast as the engine allows, and reports how it went.
+ *
+ * Usage: java Headless [options]
+ *   --engine NAME       an engine accepted by Engine.create (default packed)
+ *   --size N            an N by N board (default 100)
+ *   --generations N     the most generations to compute (default 1000)
+ *   --until-stable      stop early once a generation changes no cells, or the board enters a cycle with --cycles
+ *   --rule RULE         the rule in B/S notation, such as B36/S23 (default B3/S23, or the rule given by the pattern)
+ *   --pattern FILE      start from an RLE, Life 1.06 or plaintext (.cells) pattern
+ *   --offset ROW,COL    put the top left corner of the pattern at this cell (default 0,0)
+ *   --random DENSITY    start from a random board with this fraction of cells alive (default 0.10)
+ *   --seed N            seed for the random board
+ *   --resume FILE       start from a checkpoint, taking the size and generation count from it
+ *   --checkpoint FILE   save a checkpoint at the end of the run
+ *   --every N           also save the checkpoint every N generations, in the background while the run carries on
+ *   --cycles P          look for the board repeating with a period of up to P generations; a cycle found is
+ *                       fast-forwarded to the last generation unless --until-stable is given
+ *   --metrics           time every step, publish the metrics over JMX while running, and report latencies at the end
+ */
+public class Headless {
+
+    public static void main(String[] args) throws IOException {
+        String engineName = "packed";
+        int size = 100;
+        long generations = 1000;
+        boolean untilStable = false;
+        String rule = null;
+        String pattern = null;
+        long patternRow = 0, patternColumn = 0;
+        double density = 0.10;  // Same density as the Randomise button
+        Random random = new Random();
+        String resume = null;
+        String checkpoint = null;
+        long every = 0;
+        boolean timed = false;
+        int maxPeriod = 0;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--engine":
+                    engineName = args[++i];
+                    break;
+                case "--size":
+                    size = Integer.parseInt(args[++i]);
+                    break;
+                case "--generations":
+                    generations = Long.parseLong(args[++i]);
+                    break;
+                case "--until-stable":
+                    untilStable = true;
+                    break;
+                case "--rule":
+                    rule = args[++i];
+                    break;
+                case "--pattern":
+                    pattern = args[++i];
+                    break;
+                case "--offset":
+                    String[] offset = args[++i].split(",");
+                    patternRow = Long.parseLong(offset[0].trim());
+                    patternColumn = Long.parseLong(offset[1].trim());
+                    break;
+                case "--random":
+                    density = Double.parseDouble(args[++i]);
+                    break;
+                case "--seed":
+                    random = new Random(Long.parseLong(args[++i]));
+                    break;
+                case "--resume":
+                    resume = args[++i];
+                    break;
+                case "--checkpoint":
+                    checkpoint = args[++i];
+                    break;
+                case "--cycles":
+                    maxPeriod = Integer.parseInt(args[++i]);
+                    break;
+                case "--metrics":
+                    timed = true;
+                    break;
+                case "--every":
+                    every = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        Checkpoint saved = resume != null ? Checkpoint.read(Paths.get(resume)) : null;
+        int rows = saved != null ? saved.getRows() : size;
+        int columns = saved != null ? saved.getColumns() : size;
+        Engine engine = Engine.create(engineName, rows, columns);
+        try {
+            Simulation simulation = new Simulation(engine);
+            if (saved != null)
+                saved.restore(simulation);
+            else if (pattern != null)
+                PatternReader.read(Paths.get(pattern), patternColumn, patternRow, PatternReader.into(engine));
+            else
+                simulation.randomise(density, random);
+            saved = null;  // Free the copy of the board
+            if (rule != null)
+                engine.setRule(Rule.parse(rule));
+
+            SimulationMetrics metrics = null;
+            if (timed) {
+                metrics = new SimulationMetrics();
+                metrics.register("Headless");
+                simulation.setMetrics(metrics);
+            }
+            if (maxPeriod > 0)
+                simulation.setCycleDetector(new CycleDetector(maxPeriod));
+
+            CheckpointWriter writer = new CheckpointWriter();
+            Path checkpointFile = checkpoint != null ? Paths.get(checkpoint) : null;
+            long start = System.nanoTime();
+            long computed = 0;
+            while (computed < generations) {
+                long batch = every > 0 && checkpointFile != null ? Math.min(every, generations - computed)
+                        : generations - computed;
+                long done = simulation.run(batch, untilStable);
+                computed += done;
+                if (metrics != null)
+                    metrics.recordPopulation(engine.getPopulation());
+                if (done < batch)
+                    break;   // Stable
+                if (checkpointFile != null && computed < generations)
+                    writer.save(simulation, checkpointFile);  // Skipped if the last one is still being written
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if (checkpointFile != null) {
+                writer.finish();   // The final board is always saved
+                writer.save(simulation, checkpointFile);
+            }
+            writer.close();
+
+            System.out.println("Engine:       " + engineName + " (" + rows + "x" + columns + ")");
+            if (engine instanceof VectorEngine)
+                System.out.println("Kernel:       " + VectorEngine.describe());
+            System.out.println("Rule:         " + engine.getRule());
+            System.out.println("Generations:  " + simulation.getGeneration()
+                    + (untilStable && computed < generations ? " (stable)" : ""));
+            System.out.println("Population:   " + engine.getPopulation());
+            if (engine instanceof ActiveEngine)
+                System.out.println("Skipped:      " + ((ActiveEngine) engine).getSkippedTiles() + " of "
+                        + ((ActiveEngine) engine).getTileCount() + " tiles in the last generation");
+            System.out.printf("Time:         %.3f s%n", seconds);
+            if (simulation.getCyclePeriod() != 0)
+                System.out.println("Cycle:        period " + simulation.getCyclePeriod() + " from generation "
+                        + simulation.getCycleDetector().getOnset()
+                        + (simulation.getFastForwarded() > 0
+                                ? ", " + simulation.getFastForwarded() + " generations fast-forwarded" : ""));
+            if (checkpointFile != null)
+                System.out.println("Checkpoint:   " + checkpointFile
+                        + (writer.getSkippedSaves() > 0 ? " (" + writer.getSkippedSaves() + " saves skipped while writing)" : ""));
+            long stepped = computed - simulation.getFastForwarded();  // Generations skipped over a cycle took no time
+            System.out.printf("Throughput:   %.1f generations/s, %.3e cells/s%n",
+                    stepped / seconds, (double) stepped * rows * columns / seconds);
+            if (metrics != null) {
+                System.out.printf("Step latency: mean %.1f us, p50 %.1f us, p90 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us%n",
+                        metrics.getStepLatencyMeanMicros(), metrics.getStepLatencyP50Micros(), metrics.getStepLatencyP90Micros(),
+                        metrics.getStepLatencyP99Micros(), metrics.getStepLatencyP999Micros(), metrics.getStepLatencyMaxMicros());
+                long allocated = metrics.getAllocatedBytesPerGeneration();
+                System.out.println("Allocated:    " + (allocated >= 0 ? allocated + " bytes in the last generation"
+                        : "not counted for this engine"));
+            }
+        } finally {
+            close(engine);
+        }
+    }
+
+    // Release what the engine holds outside this JVM, such as the worker processes of the distributed engine
+    private static void close(Engine engine) {
+        if (!(engine instanceof AutoCloseable))
+            return;
+        try {
+            ((AutoCloseable) engine).close();
+        } catch (Exception e) {
+            System.err.println("Could not close the engine: " + e);
+        }
+    }
+}
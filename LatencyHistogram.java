@@ -0,0 +1,96 @@
+import java.util.Arrays;
+
+/*
+ * A histogram of latencies in nanoseconds, bucketed like HdrHistogram: values below 32 have a bucket each, and every
+ * power of two above that is split into 32 buckets, so any value is recorded to within about 3% and the whole
+ * range of a long fits in under 2000 counters.
+ *
+ * Recording allocates nothing and takes no locks, so it can sit on the stepping loop. Only one thread may record;
+ * any thread may read, and may see counts a moment out of date. A reset asked for by a reader is carried out by the
+ * recording thread on its next record, so the two never write the counters at the same time.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;   // Buckets per power of two
+
+    private final long[] counts = new long[(64 - SUB_BITS) << SUB_BITS];
+    private volatile long count;            // Values recorded, written after the bucket so readers see the bucket too
+    private volatile long max;              // The largest value recorded
+    private long sum;                       // The total of the values recorded, for the mean
+    private volatile boolean resetRequested;
+
+
+    // Record a latency in nanoseconds. Only call this from one thread.
+    public void record(long nanos) {
+        if (resetRequested) {
+            Arrays.fill(counts, 0L);
+            sum = 0;
+            max = 0;
+            count = 0;
+            resetRequested = false;
+        }
+        if (nanos < 0)
+            nanos = 0;
+        counts[index(nanos)]++;
+        sum += nanos;
+        if (nanos > max)
+            max = nanos;
+        count = count + 1;
+    }
+
+    // Clear the histogram, the next time a value is recorded
+    public void reset() {
+        resetRequested = true;
+    }
+
+    public long getCount() {
+        return resetRequested ? 0 : count;
+    }
+
+    public long getMax() {
+        return resetRequested ? 0 : max;
+    }
+
+    public double getMean() {
+        long n = getCount();
+        return n == 0 ? 0 : (double) sum / n;
+    }
+
+
+    /*
+     * Return the value below which the given percentage (0 to 100) of the recorded values fall, as the highest value
+     * of its bucket, or 0 if nothing has been recorded.
+     */
+    public long getPercentile(double percent) {
+        long n = getCount();
+        if (n == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(percent / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(highest(i), max);
+        }
+        return max;
+    }
+
+    // The bucket of a value
+    private static int index(long value) {
+        int msb = 63 - Long.numberOfLeadingZeros(value | 1);
+        if (msb < SUB_BITS)
+            return (int) value;   // Small values are exact
+        int shift = msb - SUB_BITS;
+        return ((shift + 1) << SUB_BITS) + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    // The highest value that falls in a bucket
+    private static long highest(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        int shift = (index >>> SUB_BITS) - 1;
+        long lowest = (long) ((index & (SUB_BUCKETS - 1)) + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
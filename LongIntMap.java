@@ -0,0 +1,126 @@
+import java.util.Arrays;
+
+/*
+ * A map from long keys to int counts in open-addressing (linear probing) arrays, so no boxed objects are created.
+ * Keys are only ever added, and clear() keeps the arrays for the next use.
+ * Slot keys of 0 mark free slots, so the key 0 is kept in separate fields.
+ *
+ * To visit every entry without an iterator object:
+ *     for (int slot = map.next(0); slot >= 0; slot = map.next(slot + 1)) { map.keyAt(slot); map.valueAt(slot); }
+ */
+public class LongIntMap {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;        // Slots of the table, 0 means free
+    private int[] values;       // values[i] belongs to keys[i]
+    private int shift;          // 64 - log2(keys.length), used to take the top bits of the hash
+    private int size;           // Number of keys in the map, including 0
+    private boolean hasZero;    // True if 0 is in the map
+    private int zeroValue;      // The value of key 0
+
+
+    public LongIntMap() {
+        allocate(MIN_CAPACITY);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Return the value of key, or 0 if it is not in the map
+    public int get(long key) {
+        if (key == 0)
+            return zeroValue;
+        int mask = keys.length - 1;
+        for (int i = slot(key); keys[i] != 0; i = (i + 1) & mask)
+            if (keys[i] == key)
+                return values[i];
+        return 0;
+    }
+
+    // Add delta to the value of key, adding the key with value delta if it is not in the map
+    public void add(long key, int delta) {
+        if (key == 0) {
+            if (!hasZero) {
+                hasZero = true;
+                size++;
+            }
+            zeroValue += delta;
+            return;
+        }
+        int mask = keys.length - 1;
+        int i = slot(key);
+        while (keys[i] != 0) {
+            if (keys[i] == key) {
+                values[i] += delta;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = delta;
+        if (++size > keys.length / 2)
+            rehash(keys.length * 2);
+    }
+
+    /*
+     * Remove every entry. The arrays are kept for reuse unless they are far bigger than the map was,
+     * so memory follows the map down as well as up.
+     */
+    public void clear() {
+        if (keys.length > MIN_CAPACITY && size < keys.length / 16) {
+            allocate(Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, size)) * 4));
+        } else {
+            Arrays.fill(keys, 0L);
+        }
+        size = 0;
+        hasZero = false;
+        zeroValue = 0;
+    }
+
+    // Return the first slot at or after from that holds a key, or -1 if there is none
+    public int next(int from) {
+        for (int i = from; i < keys.length; i++)
+            if (keys[i] != 0)
+                return i;
+        return from <= keys.length && hasZero ? keys.length : -1;
+    }
+
+    // Return the key in a slot returned by next
+    public long keyAt(int slot) {
+        return slot == keys.length ? 0 : keys[slot];
+    }
+
+    // Return the value in a slot returned by next
+    public int valueAt(int slot) {
+        return slot == keys.length ? zeroValue : values[slot];
+    }
+
+
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != 0) {
+                int i = slot(oldKeys[j]);
+                while (keys[i] != 0)
+                    i = (i + 1) & mask;
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+import java.util.Arrays;
+
+/*
+ * A set of longs in one open-addressing (linear probing) array, so no Long objects are created.
+ * Slot values of 0 mark free slots, so the key 0 is kept in a separate flag.
+ *
+ * To visit every key without an iterator object:
+ *     for (int slot = set.next(0); slot >= 0; slot = set.next(slot + 1)) { long key = set.keyAt(slot); ... }
+ */
+public class LongSet {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;        // Slots of the table, 0 means free
+    private int shift;          // 64 - log2(keys.length), used to take the top bits of the hash
+    private int size;           // Number of keys in the set, including 0
+    private boolean hasZero;    // True if 0 is in the set
+
+
+    public LongSet() {
+        allocate(MIN_CAPACITY);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(long key) {
+        if (key == 0)
+            return hasZero;
+        int mask = keys.length - 1;
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            if (keys[i] == key)
+                return true;
+            if (keys[i] == 0)
+                return false;
+        }
+    }
+
+    // Add key to the set, return false if it was already there
+    public boolean add(long key) {
+        if (key == 0) {
+            if (hasZero)
+                return false;
+            hasZero = true;
+            size++;
+            return true;
+        }
+        int mask = keys.length - 1;
+        int i = slot(key);
+        while (keys[i] != 0) {
+            if (keys[i] == key)
+                return false;
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        if (++size > keys.length / 2)
+            rehash(keys.length * 2);
+        return true;
+    }
+
+    // Remove key from the set, return false if it was not there
+    public boolean remove(long key) {
+        if (key == 0) {
+            if (!hasZero)
+                return false;
+            hasZero = false;
+            size--;
+            return true;
+        }
+        int mask = keys.length - 1;
+        int i = slot(key);
+        while (keys[i] != key) {
+            if (keys[i] == 0)
+                return false;
+            i = (i + 1) & mask;
+        }
+        // Shift later keys of the same probe run back into the gap, so lookups never stop early
+        for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+            int home = slot(keys[j]);
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                i = j;
+            }
+        }
+        keys[i] = 0;
+        size--;
+        return true;
+    }
+
+    /*
+     * Remove every key. The table is kept for reuse unless it is far bigger than the set was,
+     * so memory follows the population down as well as up.
+     */
+    public void clear() {
+        if (keys.length > MIN_CAPACITY && size < keys.length / 16)
+            allocate(Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, size)) * 4));
+        else
+            Arrays.fill(keys, 0L);
+        size = 0;
+        hasZero = false;
+    }
+
+    // Return the first slot at or after from that holds a key, or -1 if there is none
+    public int next(int from) {
+        for (int i = from; i < keys.length; i++)
+            if (keys[i] != 0)
+                return i;
+        return from <= keys.length && hasZero ? keys.length : -1;
+    }
+
+    // Return the key in a slot returned by next
+    public long keyAt(int slot) {
+        return slot == keys.length ? 0 : keys[slot];
+    }
+
+
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    private void rehash(int capacity) {
+        long[] old = keys;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (long key : old) {
+            if (key != 0) {
+                int i = slot(key);
+                while (keys[i] != 0)
+                    i = (i + 1) & mask;
+                keys[i] = key;
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+import java.util.Arrays;
+
+/*
+ * The original stepper from Board: one boolean per cell, eight neighbour reads per cell.
+ * It is slow but easy to follow, so it is kept as the reference the other engines are checked against.
+ */
+public class NaiveEngine implements Engine {
+
+    private final int rows;          // The number of rows on the board
+    private final int columns;       // The number of columns on the board
+    private boolean[][] current;     // current[r][c] is true if the cell in row r, column c is alive.
+    private boolean[][] next;        // The next generation is written here, then the two arrays are swapped
+    private long changedCells;       // Number of cells that were born or died in the last step
+    private Rule rule = Rule.CONWAY; // Which cells are born and survive
+    private long hash;               // The XOR of Zobrist.cell of every live cell
+
+
+    public NaiveEngine(int rows, int columns) {
+        this.rows = rows;
+        this.columns = columns;
+        current = new boolean[rows][columns];
+        next = new boolean[rows][columns];
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public boolean isAlive(int row, int col) {
+        return current[row][col];
+    }
+
+    public void setAlive(int row, int col, boolean alive) {
+        if (current[row][col] != alive)
+            hash ^= Zobrist.cell((long) row * columns + col);
+        current[row][col] = alive;
+    }
+
+    public void clear() {
+        for (int r = 0; r < rows; r++)
+            Arrays.fill(current[r], false);
+        hash = 0;
+    }
+
+    public long getPopulation() {
+        long population = 0;
+        for (int r = 0; r < rows; r++)
+            for (int c = 0; c < columns; c++)
+                if (current[r][c])
+                    population++;
+        return population;
+    }
+
+    public Rule getRule() {
+        return rule;
+    }
+
+    public void setRule(Rule rule) {
+        this.rule = rule;
+    }
+
+    public long getChangedCells() {
+        return changedCells;
+    }
+
+    public long getHash() {
+        return hash;
+    }
+
+    //Compute the next generation
+    public void step() {
+        long changed = 0;
+        for (int r = 0; r < rows; r++) {                // Iterate through the rows
+            // The grid wraps around, so the row above the first row is the last row and the row below the last row is the first row
+            int above = r > 0 ? r - 1 : rows - 1;
+            int below = r < rows - 1 ? r + 1 : 0;
+
+            for (int c = 0; c < columns; c++) { //Iterate through the columns
+                int left = c > 0 ? c - 1 : columns - 1;    // IF NOT first column, THEN check column to the left, ELSE check last column
+                int right = c < columns - 1 ? c + 1 : 0;   // IF NOT last column, THEN check column to the right, ELSE check first column
+
+                int neighbourhood = 0; // Bit (dy + 1) * 3 + (dx + 1) is set if the cell dx columns and dy rows from [r][c] is alive
+                if (current[above][left]) //Top left
+                    neighbourhood |= 1;
+                if (current[above][c]) //Directly above
+                    neighbourhood |= 1 << 1;
+                if (current[above][right]) // Top right
+                    neighbourhood |= 1 << 2;
+                if (current[r][left]) //Adjacent left
+                    neighbourhood |= 1 << 3;
+                if (current[r][c]) //The cell itself
+                    neighbourhood |= 1 << 4;
+                if (current[r][right]) //Adjacent right
+                    neighbourhood |= 1 << 5;
+                if (current[below][left]) //Bottom left
+                    neighbourhood |= 1 << 6;
+                if (current[below][c]) //Directly below
+                    neighbourhood |= 1 << 7;
+                if (current[below][right]) //Bottom right
+                    neighbourhood |= 1 << 8;
+
+                next[r][c] = rule.next(neighbourhood); //Looked up in the rule's table, B3/S23 unless the rule was changed
+                if (next[r][c] != current[r][c]) {
+                    changed++;
+                    hash ^= Zobrist.cell((long) r * columns + c);  // The cell flipped
+                }
+            }
+        }
+        changedCells = changed;
+
+        boolean[][] old = current; // Swap the boards so no array is allocated per generation
+        current = next;
+        next = old;
+    }
+}
@@ -0,0 +1,215 @@
+import java.util.Arrays;
+
+/*
+ * Stores the board as packed rows, 64 cells to a long, and computes the next generation 64 cells at a time.
+ * Bit (c & 63) of word (c >> 6) in a row holds column c. Bits past the last column are always kept at 0.
+ *
+ * The eight neighbours of every cell in a word are lined up by shifting the words of the rows above, below and
+ * the row itself one column left and right (wrapping around the board), then added with bitwise full adders
+ * into a 4 bit count per cell (ones, twos, fours, eights).
+ * The current and next generation arrays are swapped after each step, so stepping allocates nothing.
+ * A hash of the board (see Zobrist) is kept up to date for CycleDetector, from each row as it is written.
+ */
+public class PackedEngine implements Engine {
+
+    protected final int rows;        // The number of rows on the board
+    protected final int columns;     // The number of columns on the board
+    protected final int words;       // The number of longs used to store one row
+    protected long[] cells;          // The current generation, row r starts at cells[r * words]
+    protected long[] next;           // The next generation is written here, then the two arrays are swapped
+    protected long changedCells;     // Number of cells that were born or died in the last step
+    protected Rule rule = Rule.CONWAY;  // Which cells are born and survive
+    protected long hash;             // The hash of the current generation, see Zobrist
+    protected final long[] rowKeys;  // Zobrist keys of the rows and of the words in a row
+    protected final long[] columnKeys;
+    protected final long[] rowSums;  // rowSums[r] is the hash of row r without its row key, see Zobrist
+    protected final long[] rowHashes;  // rowHashes[r] is how the last stepRows changed the hash of row r
+
+
+    public PackedEngine(int rows, int columns) {
+        this.rows = rows;
+        this.columns = columns;
+        words = (columns + 63) >>> 6;
+        cells = new long[rows * words];
+        next = new long[rows * words];
+        rowKeys = Zobrist.keys(rows);
+        columnKeys = Zobrist.keys(words);
+        rowSums = new long[rows];
+        rowHashes = new long[rows];
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public boolean isAlive(int row, int col) {
+        return (cells[row * words + (col >>> 6)] & (1L << col)) != 0;
+    }
+
+    public void setAlive(int row, int col, boolean alive) {
+        int i = row * words + (col >>> 6);
+        long old = cells[i];
+        if (alive)
+            cells[i] |= 1L << col;
+        else
+            cells[i] &= ~(1L << col);
+        long change = columnKeys[col >>> 6] * (Zobrist.spread(cells[i]) - Zobrist.spread(old));
+        rowSums[row] += change;
+        hash += rowKeys[row] * change;
+    }
+
+    public void clear() {
+        Arrays.fill(cells, 0L);
+        Arrays.fill(rowSums, 0L);
+        hash = 0;
+    }
+
+    public Rule getRule() {
+        return rule;
+    }
+
+    public void setRule(Rule rule) {
+        this.rule = rule;
+    }
+
+    public long getPopulation() {
+        long population = 0;
+        for (long word : cells)
+            population += Long.bitCount(word);
+        return population;
+    }
+
+    public long getChangedCells() {
+        return changedCells;
+    }
+
+    public long getHash() {
+        return hash;
+    }
+
+    public void copyTo(long[] packed) {
+        System.arraycopy(cells, 0, packed, 0, cells.length);
+    }
+
+    public void copyFrom(long[] packed) {
+        System.arraycopy(packed, 0, cells, 0, cells.length);
+        if ((columns & 63) != 0)
+            for (int r = 0; r < rows; r++)
+                cells[r * words + words - 1] &= (1L << columns) - 1;  // Keep the bits past the last column at 0
+        hash = 0;
+        for (int r = 0; r < rows; r++) {
+            rowSums[r] = Zobrist.row(cells, r * words, words, columnKeys);
+            hash += rowKeys[r] * rowSums[r];
+        }
+    }
+
+    public void step() {
+        changedCells = stepRows(0, rows);
+        hash += rowHashes(0, rows);
+        long[] old = cells; // Swap the boards
+        cells = next;
+        next = old;
+    }
+
+
+    /*
+     * Write the next generation of rows from (inclusive) to to (exclusive) into next and return the number of
+     * cells in them that changed. How the hash of each row changed is left in rowHashes.
+     * Rows are independent of each other, so subclasses can call this on separate bands of the board.
+     */
+    protected long stepRows(int from, int to) {
+        long changed = 0;
+        for (int r = from; r < to; r++) {
+            long sum = 0;
+            // The grid wraps around, so the row above the first row is the last row and the row below the last row is the first row
+            int above = (r > 0 ? r - 1 : rows - 1) * words;
+            int below = (r < rows - 1 ? r + 1 : 0) * words;
+            int row = r * words;
+            for (int w = 0; w < words; w++) {
+                long word = stepWord(cells, above, row, below, w, words, columns, rule);
+                changed += Long.bitCount(word ^ cells[row + w]);
+                sum += Zobrist.spread(word) * columnKeys[w];
+                next[row + w] = word;
+            }
+            rowHashes[r] = (sum - rowSums[r]) * rowKeys[r];  // Only row r reads or writes rowSums[r]
+            rowSums[r] = sum;
+        }
+        return changed;
+    }
+
+    // The total change to the hash of rows from (inclusive) to to (exclusive) in the last stepRows
+    protected long rowHashes(int from, int to) {
+        long change = 0;
+        for (int r = from; r < to; r++)
+            change += rowHashes[r];
+        return change;
+    }
+
+
+    /*
+     *  Compute word w of the next generation of a row.
+     *  above, row and below are the offsets of the row and its two neighbouring rows in src.
+     */
+    static long stepWord(long[] src, int above, int row, int below, int w, int words, int columns, Rule rule) {
+        long a = src[above + w];
+        long aw = west(src, above, w, words, columns);
+        long ae = east(src, above, w, words, columns);
+        long m = src[row + w];
+        long mw = west(src, row, w, words, columns);
+        long me = east(src, row, w, words, columns);
+        long b = src[below + w];
+        long bw = west(src, below, w, words, columns);
+        long be = east(src, below, w, words, columns);
+
+        // Add the three cells above: sa is the ones bit, ca the twos bit
+        long sa = aw ^ a ^ ae;
+        long ca = (aw & a) | (ae & (aw ^ a));
+        // Add the three cells below
+        long sb = bw ^ b ^ be;
+        long cb = (bw & b) | (be & (bw ^ b));
+        // Add the left and right cells
+        long sm = mw ^ me;
+        long cm = mw & me;
+
+        // Ones of the total, with a carry into the twos
+        long ones = sa ^ sb ^ sm;
+        long c1 = (sa & sb) | (sm & (sa ^ sb));
+        // Twos of the total: add ca, cb, cm and the carry
+        long t = ca ^ cb ^ cm;
+        long t4 = (ca & cb) | (cm & (ca ^ cb));
+        long twos = t ^ c1;
+        long c2 = t & c1;
+        long fours = t4 ^ c2;
+        long eights = t4 & c2;
+
+        long result = rule.isConway()
+                ? twos & (ones | m) & ~(fours | eights)   // 3 neighbours, or 2 and alive: a quarter of the work of apply
+                : rule.apply(m, ones, twos, fours, eights);
+        if (w == words - 1 && (columns & 63) != 0)
+            result &= (1L << columns) - 1; // Keep the bits past the last column dead
+        return result;
+    }
+
+
+    // Word w of a row shifted one column right, so every bit holds the cell to its left
+    static long west(long[] src, int row, int w, int words, int columns) {
+        long carry;
+        if (w > 0)
+            carry = src[row + w - 1] >>> 63;
+        else
+            carry = src[row + words - 1] >>> (columns - 1); // Left of the first column is the last column
+        return (src[row + w] << 1) | (carry & 1L);
+    }
+
+    // Word w of a row shifted one column left, so every bit holds the cell to its right
+    static long east(long[] src, int row, int w, int words, int columns) {
+        long x = src[row + w] >>> 1;
+        if (w < words - 1)
+            return x | (src[row + w + 1] << 63);
+        return x | ((src[row] & 1L) << (columns - 1)); // Right of the last column is the first column
+    }
+}
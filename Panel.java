@@ -1,22 +1,67 @@
 import java.awt.*;
 import javax.swing.*;
+import java.awt.event.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
 
 
-public class Panel extends JPanel {
+/*
+ * Draws the board through a viewport that can be zoomed with the mouse wheel and panned by dragging with the
+ * middle button or with shift held down. With a PanListener set (for a window onto an unbounded universe) panning
+ * moves the board under the view instead, so the view can follow a pattern anywhere.
+ *
+ * The panel draws into an image the size of the panel, writing its int pixels directly. Zoomed in (2^zoom pixels
+ * per cell, zoom >= 0) every pixel looks up its cell. Zoomed out (2^-zoom cells per pixel) every pixel shows how
+ * many cells in its block are alive, counted from the packed rows for small blocks and taken from a DensityPyramid
+ * for large ones, so the cost of a repaint follows the number of pixels rather than the number of cells.
+ */
+public class Panel extends JPanel implements MouseListener, MouseMotionListener, MouseWheelListener {
 
 
     private static final long serialVersionUID = 1L;
 
+    private static final int MIN_ZOOM = -8;                   // At most 256 by 256 cells per pixel
+    private static final int MAX_ZOOM = 6;                    // At most 64 by 64 pixels per cell
+    private static final int MAX_PREFERRED_SIZE = 800;        // Larger boards start zoomed out to fit
+    private static final int OUTSIDE_RGB = 0x202020;          // Colour of the area around the board
+
     private int rows;                            // The number of rows of squares in the grid.
     private int columns;                         // The number of columns of squares in the grid.
-    private Color cellColour = Color.BLACK;                    // Colour of squares, either black or white, depending on condition
-    private boolean autopaint = true;            // If true, then when a square's colour is set, repaint is called automatically.
-    private Color[][] grid;                      // An array that contains the rectangles' colours.
-    private BufferedImage off_screenImg;         // The grid is actually drawn here, then the image is copied to the screen
-    private Graphics off_screenGrph;             // Graphics context for drawing to off_screenImg
-    private boolean needsRedraw;                 // This is set to true when a change has occurred that changes the appearance of the grid
-
+    private int words;                           // The number of longs in one packed row of cells
+    private int aliveRGB = Color.RED.getRGB();   // Colour of alive squares
+    private int deadRGB = Color.BLACK.getRGB();  // Colour of dead squares, the same as the background
+    private long[] shown;                        // The packed cells being shown, to find the cells that changed
+    private DensityPyramid pyramid;              // Block counts of shown, for drawing far zoomed out
+
+    private int zoom;                            // 2^zoom pixels per cell, negative when zoomed out
+    private double viewX;                        // Column (with fraction) at the left edge of the panel
+    private double viewY;                        // Row (with fraction) at the top edge of the panel
+    private boolean viewSet;                     // False until the view has been fitted to the panel
+    private int[] shades;                        // Zoomed out, the colour of a pixel with each number of live cells
+
+    private BufferedImage screenImage;           // The grid is actually drawn here, then the image is copied to the screen
+    private int[] pixels;                        // The pixels of screenImage, written directly
+    private int[] columnOf;                      // The board column under each x of the panel (block start when zoomed out)
+    private int[] rowOf;                         // The board row under each y of the panel (block start when zoomed out)
+    private boolean needsRedraw = true;          // This is set to true when every pixel has to be drawn again
+
+    private int panX, panY;                      // Mouse position during a pan drag
+    private PanListener panListener;             // Told to move the board when panning, null to pan the view
+    private double panColumns, panRows;          // Fraction of a cell panned but not yet passed to panListener
+
+    private SimulationMetrics metrics;           // Told how long each frame took to draw, null if metrics are off
+    private boolean overlay;                     // True if the metrics are drawn over the board
+    private long showNanos;                      // Time spent in showCells since the last paint
+    private static final int OVERLAY_WIDTH = 330, OVERLAY_HEIGHT = 120;  // The largest box the metrics are drawn in
+
+
+    // Told on the Event Dispatch Thread to move the board when the user pans, for boards that are a window onto more
+    public interface PanListener {
+
+        // Move the board so the cell that was at (columns, rows) is now at (0, 0)
+        void panned(long columns, long rows);
+    }
 
     /*
      *  Construct a Panel with the specified number of rows and columns of rectangles, and with a specified preferred size for the squares.
@@ -28,12 +73,18 @@ public class Panel extends JPanel {
     public Panel(int rows, int columns, int cellWidth, int cellHeight) {
         this.rows = rows;                  //Rows variable in this class takes the value from this parameter
         this.columns = columns;            //Columns variable in this class takes the value from this parameter
-        grid = new Color[rows][columns];   //Create a colour grid with specified rows and columns
+        words = (columns + 63) >>> 6;
+        shown = new long[rows * words];
+        pyramid = new DensityPyramid(rows, columns, -MIN_ZOOM);
         setBackground(Color.BLACK);        //Set the colour of the background
         setOpaque(true);                   //Paint every pixel within the components bounds
 
-        setPreferredSize(new Dimension((cellWidth * columns), (cellHeight * rows))); //Set the preferred size of the grid
+        //Set the preferred size of the grid, boards too big for the screen start zoomed out
+        setPreferredSize(new Dimension(Math.min(MAX_PREFERRED_SIZE, cellWidth * columns), Math.min(MAX_PREFERRED_SIZE, cellHeight * rows)));
 
+        addMouseListener(this);
+        addMouseMotionListener(this);
+        addMouseWheelListener(this);
     }
 
 
@@ -48,65 +99,94 @@ public class Panel extends JPanel {
         return columns;
     }
 
-    /*
-     *  Set the Colour of the square in the specified row and column.
-     *  If the square lies outside the grid, this is simply ignored.
-     *  THIS IS FOR INDIVIDUAL SQUARES.
-     */
-
-    public void setColour(int row, int col, Color c) {
-        if (row >= 0 && row < rows && col >= 0 && col < columns) {
-            grid[row][col] = c; // Square in this position has colour c
-            if (off_screenImg == null) //If image is empty
-                repaint(); //Repaint the component
-            else {
-                drawSquare(row, col, true); //Draw the individual square as 'true'
-            }
-        }
-    }
-
-    /*
-     *  Set all rectangles of the grid to have the specified Colour.
-     *  THIS IS TO FILL THE WHOLE GRID ( AT THE START OR WHEN EVERYTHING IS RESET)
-     */
-    public void fill(Color c) {
-        for (int i = 0; i < rows; i++)
-            for (int j = 0; j < columns; j++)
-                grid[i][j] = c; //Give every square the same colour, which is parameter c
-        forceRedraw();   //Draws the rectangles even if autopaint is false.
+    // Set the colour of alive squares and redraw the grid
+    public void setCellColour(Color c) {
+        aliveRGB = c.getRGB();
+        shades = null;
+        forceRedraw();
     }
 
 
     /*
-     *   Clear the grid by setting all the colours to null.
-     *   THIS IS CALLED WHEN RESET IS PRESSED
+     *  Show the given cells, packed 64 to a long as in a Frame (bit (c & 63) of word row * words + (c >> 6)).
+     *  Zoomed in, only the pixels of cells that changed are written and only the rectangle around them is repainted.
+     *  Zoomed out, the changed blocks are recounted and the panel is redrawn.
      */
-    public void clear() {
-        fill(null);
+    public void showCells(long[] cells) {
+        long start = System.nanoTime();
+        showCellsTimed(cells);
+        showNanos += System.nanoTime() - start;
+        if (overlay)
+            repaint(0, 0, OVERLAY_WIDTH, OVERLAY_HEIGHT);  // Keep the numbers up to date even if the cells under them did not change
     }
 
-
-    /*
-    When this property is true, then every call to the setColour methods automatically results in repainting that square on the screen.
-    When the value is false, colour changes are recorded in the data for the grid but are not made on the screen.
-    When the autopaint property is reset to true, the changes are applied and the entire grid is repainted.
-    The default value of this property is true.
-    Note that clearing or filling the grid will cause an immediate screen update, even if autopaint is false.
-  */
-    public void setAutopaint(boolean autopaint) {
-        if (this.autopaint == autopaint)
-            return; //If the autopaint variable in the class is equal to the parameter then do nothing( if true )
-        this.autopaint = autopaint; //Make the current autopaint variable equal the parameter
-        if (autopaint)  //If this is true then force to redraw
+    private void showCellsTimed(long[] cells) {
+        boolean incremental = !needsRedraw && zoom >= 0 && screenImage != null;
+        int x0 = Integer.MAX_VALUE, y0 = Integer.MAX_VALUE, x1 = -1, y1 = -1; // Rectangle around the changed pixels
+        boolean anyChanged = false;
+        double scale = 1 << Math.max(0, zoom);
+        for (int r = 0; r < rows; r++) {
+            int row = r * words;
+            for (int w = 0; w < words; w++) {
+                long changed = cells[row + w] ^ shown[row + w];
+                if (changed == 0)
+                    continue;
+                long word = cells[row + w];
+                shown[row + w] = word;
+                pyramid.markDirty(r, w);
+                anyChanged = true;
+                if (!incremental)
+                    continue;
+
+                int top = Math.max(0, (int) Math.ceil((r - viewY) * scale));
+                int bottom = Math.min(pixelHeight(), (int) Math.ceil((r + 1 - viewY) * scale));
+                if (top >= bottom)
+                    continue;  // Row is off screen
+                while (changed != 0) { // Visit every changed bit
+                    int bit = Long.numberOfTrailingZeros(changed);
+                    changed &= changed - 1;
+                    int c = w * 64 + bit;
+                    int left = Math.max(0, (int) Math.ceil((c - viewX) * scale));
+                    int right = Math.min(pixelWidth(), (int) Math.ceil((c + 1 - viewX) * scale));
+                    if (left >= right)
+                        continue;  // Column is off screen
+                    int rgb = (word & (1L << bit)) != 0 ? aliveRGB : deadRGB;
+                    for (int y = top; y < bottom; y++)
+                        Arrays.fill(pixels, y * pixelWidth() + left, y * pixelWidth() + right, rgb);
+                    x0 = Math.min(x0, left);
+                    x1 = Math.max(x1, right);
+                    y0 = Math.min(y0, top);
+                    y1 = Math.max(y1, bottom);
+                }
+            }
+        }
+        if (!anyChanged)
+            return;
+        if (!incremental)
             forceRedraw();
+        else if (x1 >= 0)
+            repaint(x0, y0, x1 - x0, y1 - y0);
     }
 
-    public boolean getAutopaint() {
-        return autopaint;
+
+    /*
+     * Zoom so the whole board fits in the panel, and centre it.
+     */
+    public void fitToView() {
+        int width = Math.max(1, getWidth()), height = Math.max(1, getHeight());
+        int z = MAX_ZOOM;
+        while (z > MIN_ZOOM && (scaled(columns, z) > width || scaled(rows, z) > height))
+            z--;
+        zoom = z;
+        viewX = columns / 2.0 - width / 2.0 / Math.pow(2, zoom);
+        viewY = rows / 2.0 - height / 2.0 / Math.pow(2, zoom);
+        viewSet = true;
+        shades = null;
+        forceRedraw();
     }
 
     /*
-     * This method can be called to force redrawing of the entire grid while the autopaint variable does not need to be change.
+     * This method can be called to force redrawing of the entire grid.
      */
     final public void forceRedraw() {
         needsRedraw = true;
@@ -115,36 +195,23 @@ public class Panel extends JPanel {
 
 
     /*
-     * Given an x-coordinate of a pixel in the panel, this method returns the row number of the grid square that contains that pixel.
+     * Given an x-coordinate of a pixel in the panel, this method returns the column number of the grid square that contains that pixel.
+     * The result is negative or at least getColumnCount() if the pixel is outside the board.
      */
     public int xCoordToColumnNumber(int x) {
-
-        //Get the whole width and divide by the number of columns to get each column width
-        double colWidth = (double) (getWidth()) / columns;
-
-        //calculate whether the col is within the number of columns, if yes then return the col number else return how many column there are
-        int col = (int) ((x) / colWidth);
-        if (col >= columns)
-            return columns;
-        else
-            return col;
+        if (zoom >= 0)
+            return (int) Math.floor(viewX + x / Math.pow(2, zoom));
+        return (int) ((Math.floorDiv((long) Math.floor(viewX), 1L << -zoom) + x) << -zoom);
     }
 
     /*
-     * Given a y-coordinate of a pixel in the grid, this method returns the column number of the grid square that contains that pixel.
-     *
+     * Given a y-coordinate of a pixel in the grid, this method returns the row number of the grid square that contains that pixel.
+     * The result is negative or at least getRowCount() if the pixel is outside the board.
      */
     public int yCoordToRowNumber(int y) {
-
-        //Get the full height and divide by the number of rows to get each row height.
-        double rowHeight = (double) (getHeight()) / rows;
-
-        //Divide the y position by the rowheight to get the row variable which is the row number
-        int row = (int) ((y) / rowHeight);
-        if (row >= rows) //if row is less than the number of rows
-            return rows; //return the total rows variable
-        else
-            return row; //return the row
+        if (zoom >= 0)
+            return (int) Math.floor(viewY + y / Math.pow(2, zoom));
+        return (int) ((Math.floorDiv((long) Math.floor(viewY), 1L << -zoom) + y) << -zoom);
     }
 
     /*
@@ -152,61 +219,221 @@ public class Panel extends JPanel {
      *
      */
     public BufferedImage getImage() {
-        return off_screenImg;
+        return screenImage;
+    }
+
+    // Return true if the mouse event is part of panning the view rather than editing cells
+    public static boolean isPanGesture(MouseEvent e) {
+        return e.isShiftDown() || SwingUtilities.isMiddleMouseButton(e);
+    }
+
+    // Move the board under the view through panListener when panning, or pan the view over the board if it is null
+    public void setPanListener(PanListener panListener) {
+        this.panListener = panListener;
+        panColumns = panRows = 0;
+    }
+
+    // Record render latency (showCells plus the next paint) into metrics, or stop if it is null
+    public void setMetrics(SimulationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // Draw the metrics over the top left corner of the board, or stop
+    public void setOverlay(boolean overlay) {
+        this.overlay = overlay;
+        repaint();
     }
 
     public void paintComponent(Graphics g) {
+        long start = System.nanoTime();
         super.paintComponent(g); //invoke the overridden method through the use of the keyword super
 
-        if ((off_screenImg == null) || off_screenImg.getWidth() != getWidth() || off_screenImg.getHeight() != getHeight()) {
+        if (screenImage == null || screenImage.getWidth() != getWidth() || screenImage.getHeight() != getHeight()) {
+            if (getWidth() <= 0 || getHeight() <= 0)
+                return;
             //Create new image with the width and height of the component with 8-bit RGB imageType
-            off_screenImg = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_RGB);
-            off_screenGrph = off_screenImg.getGraphics(); //Get graphics component of the image
+            screenImage = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) screenImage.getRaster().getDataBuffer()).getData();
+            columnOf = new int[getWidth()];
+            rowOf = new int[getHeight()];
+            if (!viewSet)
+                fitToView();
             needsRedraw = true;
         }
 
         if (needsRedraw) {
-            for (int r = 0; r < rows; r++)
-                for (int c = 0; c < columns; c++)
-                    drawSquare(r, c, false); //All cells become dead, and the colour is null(black)
+            render();
             needsRedraw = false;
         }
-        g.drawImage(off_screenImg, 0, 0, null); //Image to be drawn start from x,y
+        g.drawImage(screenImage, 0, 0, null); //Image to be drawn start from x,y
+        if (metrics != null) {
+            metrics.recordRender(showNanos + System.nanoTime() - start);
+            showNanos = 0;
+        }
+        if (overlay && metrics != null)
+            drawOverlay(g);
+    }
+
+    // Draw the metrics in a translucent box. The text is only made here, on the Event Dispatch Thread, never while stepping.
+    private void drawOverlay(Graphics g) {
+        String[] lines = {
+                String.format("Generation %d  %.1f gen/s", metrics.getGeneration(), metrics.getGenerationRate()),
+                String.format("Step    p50 %.1f  p99 %.1f  max %.1f us", metrics.getStepLatencyP50Micros(),
+                        metrics.getStepLatencyP99Micros(), metrics.getStepLatencyMaxMicros()),
+                String.format("Render  p50 %.1f  p99 %.1f  max %.1f us", metrics.getRenderLatencyP50Micros(),
+                        metrics.getRenderLatencyP99Micros(), metrics.getRenderLatencyMaxMicros()),
+                String.format("Population %d  changed %d", metrics.getPopulation(), metrics.getChangedCells()),
+                String.format("Dropped frames %d", metrics.getDroppedFrames()),
+                String.format("Allocated %s B/gen  heap %.1f MB", metrics.getAllocatedBytesPerGeneration() < 0 ? "-"
+                        : String.valueOf(metrics.getAllocatedBytesPerGeneration()), metrics.getHeapUsedBytes() / 1048576.0),
+                metrics.getTileCount() < 0 ? null  // Only engines that skip tiles have this line
+                        : String.format("Skipped tiles %d of %d", metrics.getSkippedTiles(), metrics.getTileCount())};
+        int count = lines[lines.length - 1] != null ? lines.length : lines.length - 1;
+        g.setColor(new Color(0, 0, 0, 170));
+        g.fillRect(0, 0, OVERLAY_WIDTH, 8 + count * 16);
+        g.setColor(Color.WHITE);
+        g.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        for (int i = 0; i < count; i++)
+            g.drawString(lines[i], 6, 16 + i * 16);
     }
 
-    synchronized private void drawSquare(int row, int col, boolean callRepaint) {
-        // Draw one of the squares in a specified graphics context.
 
-        // G must be non-null and (row,col) must be in the grid.
-        if (callRepaint && !autopaint)
-            return; //Do nothing if callRepaint is true AND autopaint is true
+    // Draw every pixel of screenImage from the shown cells
+    private void render() {
+        int width = pixelWidth(), height = pixelHeight();
+        if (zoom >= 0) {
+            double scale = 1 << zoom;
+            for (int x = 0; x < width; x++)
+                columnOf[x] = (int) Math.floor(viewX + x / scale);
+            for (int y = 0; y < height; y++)
+                rowOf[y] = (int) Math.floor(viewY + y / scale);
+        } else {
+            long firstColumn = Math.floorDiv((long) Math.floor(viewX), 1L << -zoom);
+            long firstRow = Math.floorDiv((long) Math.floor(viewY), 1L << -zoom);
+            for (int x = 0; x < width; x++)
+                columnOf[x] = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, (firstColumn + x) << -zoom));
+            for (int y = 0; y < height; y++)
+                rowOf[y] = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, (firstRow + y) << -zoom));
+        }
+
+        int m = -zoom;   // Zoomed out, blocks are 2^m cells on a side
+        if (m >= DensityPyramid.BASE)
+            pyramid.update(shown);
+        if (m > 0 && shades == null)
+            shades = shades(1 << (2 * m));
+
+        for (int y = 0; y < height; y++) {
+            int r = rowOf[y];
+            int pixel = y * width;
+            if (r < 0 || r >= rows) {
+                Arrays.fill(pixels, pixel, pixel + width, OUTSIDE_RGB);
+                continue;
+            }
+            for (int x = 0; x < width; x++, pixel++) {
+                int c = columnOf[x];
+                if (c < 0 || c >= columns)
+                    pixels[pixel] = OUTSIDE_RGB;
+                else if (m <= 0)
+                    pixels[pixel] = (shown[r * words + (c >>> 6)] & (1L << c)) != 0 ? aliveRGB : deadRGB;
+                else if (m < DensityPyramid.BASE)
+                    pixels[pixel] = shades[smallBlockCount(r, c, m)];
+                else
+                    pixels[pixel] = shades[pyramid.count(m, r >> m, c >> m)];
+            }
+        }
+    }
+
+    // Count the live cells in the block of 2^m by 2^m cells at row r, column c, for blocks smaller than a pyramid level
+    private int smallBlockCount(int r, int c, int m) {
+        long mask = ((1L << (1 << m)) - 1) << c;  // Blocks are aligned, so never cross a word
+        int count = 0;
+        int last = Math.min(rows, r + (1 << m));
+        for (int row = r; row < last; row++)
+            count += Long.bitCount(shown[row * words + (c >>> 6)] & mask);
+        return count;
+    }
 
-        //Get each rowHeight by dividing the total height by the number of rows
-        double rowHeight = (double) (getHeight()) / rows;
+    // Colours for 0 to cells live cells in a pixel, from dead to alive with any live cell clearly visible
+    private int[] shades(int cells) {
+        int[] shade = new int[cells + 1];
+        for (int count = 0; count <= cells; count++) {
+            double f = count == 0 ? 0 : 0.25 + 0.75 * Math.sqrt((double) count / cells);
+            int red = (int) Math.round(((deadRGB >> 16) & 0xFF) * (1 - f) + ((aliveRGB >> 16) & 0xFF) * f);
+            int green = (int) Math.round(((deadRGB >> 8) & 0xFF) * (1 - f) + ((aliveRGB >> 8) & 0xFF) * f);
+            int blue = (int) Math.round((deadRGB & 0xFF) * (1 - f) + (aliveRGB & 0xFF) * f);
+            shade[count] = (red << 16) | (green << 8) | blue;
+        }
+        return shade;
+    }
 
-        //Get each colWid by dividing the total wid by the number of columns
-        double colWidth = (double) (getWidth()) / columns;
+    private int pixelWidth() {
+        return screenImage == null ? 0 : screenImage.getWidth();
+    }
 
-        //Y represents the number of rows per rowHeight
-        int y = (int) Math.round(rowHeight * row);
+    private int pixelHeight() {
+        return screenImage == null ? 0 : screenImage.getHeight();
+    }
 
+    // Size in pixels of the given number of cells at zoom z
+    private static double scaled(int cells, int z) {
+        return cells * Math.pow(2, z);
+    }
 
-        //X represents the number of columns per colWidth
-        int x = (int) Math.round(colWidth * col);
 
+    // Zoom in or out by a factor of two per wheel click, keeping the cell under the mouse where it is
+    public void mouseWheelMoved(MouseWheelEvent e) {
+        int z = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom - e.getWheelRotation()));
+        if (z == zoom)
+            return;
+        double oldScale = Math.pow(2, zoom), newScale = Math.pow(2, z);
+        viewX += e.getX() / oldScale - e.getX() / newScale;
+        viewY += e.getY() / oldScale - e.getY() / newScale;
+        zoom = z;
+        shades = null;
+        forceRedraw();
+    }
 
-        Color c = grid[row][col]; //Create colour grid equal to the grid[r][c] to hold the colour
+    public void mousePressed(MouseEvent e) {
+        panX = e.getX();
+        panY = e.getY();
+    }
 
+    public void mouseDragged(MouseEvent e) {
+        if (!isPanGesture(e))
+            return;
+        double scale = Math.pow(2, zoom);
+        double dx = (e.getX() - panX) / scale, dy = (e.getY() - panY) / scale;
+        panX = e.getX();
+        panY = e.getY();
+        if (panListener != null) {  // The view stays put and the board is moved by whole cells, shown in the next frame
+            panColumns -= dx;
+            panRows -= dy;
+            long columns = (long) panColumns, rows = (long) panRows;
+            panColumns -= columns;
+            panRows -= rows;
+            if (columns != 0 || rows != 0)
+                panListener.panned(columns, rows);
+            return;
+        }
+        viewX -= dx;
+        viewY -= dy;
+        forceRedraw();
+    }
 
-        off_screenGrph.setColor((c == null) ? cellColour : c); //If c is null then default colour, else c
+    public void mouseClicked(MouseEvent e) {
+    }  // Other methods required by the MouseListener and MouseMotionListener interfaces.
 
-        off_screenGrph.fillRect(x, y, 8, 8); //Colour the square with position x,y and size 8
+    public void mouseEntered(MouseEvent e) {
+    }
 
-        if (callRepaint) //If repaint is true
-            repaint(x, y, 8, 8); //Repaint with x,y and cellSize 8
+    public void mouseExited(MouseEvent e) {
+    }
 
+    public void mouseReleased(MouseEvent e) {
+    }
 
+    public void mouseMoved(MouseEvent e) {
     }
 
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,76 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * A PackedEngine that steps bands of rows on a ForkJoinPool.
+ * Every band reads the whole current generation (including the wrap-around rows above and below it) and writes
+ * only its own rows of the next generation, so bands need no locking and the result is identical to stepping
+ * on one thread.
+ * The bands and the task that runs them are made once and reinitialised every step, and each band leaves its
+ * count of changed cells in an array, so a step allocates nothing.
+ */
+public class ParallelEngine extends PackedEngine {
+
+    private final ForkJoinPool pool;     // Runs the bands, its worker threads are daemons
+    private final Band[] bands;          // The rows split into about four bands per thread
+    private final long[] bandChanges;    // bandChanges[i] is the number of cells bands[i] changed in the last step
+    private final RecursiveAction all;   // Steps every band
+
+
+    public ParallelEngine(int rows, int columns, int parallelism) {
+        super(rows, columns);
+        pool = new ForkJoinPool(parallelism);
+        // About four bands per thread lets idle threads steal work, but keep each band at least a few thousand words
+        int bandRows = Math.max(Math.max(1, 4096 / words), rows / (parallelism * 4));
+        bands = new Band[(rows + bandRows - 1) / bandRows];
+        for (int i = 0; i < bands.length; i++)
+            bands[i] = new Band(i, i * bandRows, Math.min(rows, (i + 1) * bandRows));
+        bandChanges = new long[bands.length];
+        all = new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            protected void compute() {
+                invokeAll(bands);
+            }
+        };
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    public void step() {
+        for (Band band : bands)
+            band.reinitialize();
+        all.reinitialize();
+        pool.invoke(all);
+        changedCells = 0;
+        for (long changes : bandChanges)
+            changedCells += changes;
+        hash += rowHashes(0, rows);
+        long[] old = cells; // Swap the boards
+        cells = next;
+        next = old;
+    }
+
+
+    // Steps rows from (inclusive) to to (exclusive) and leaves the number of cells in them that changed in bandChanges
+    private class Band extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int index;
+        private final int from;
+        private final int to;
+
+        Band(int index, int from, int to) {
+            this.index = index;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            bandChanges[index] = stepRows(from, to);
+        }
+    }
+}
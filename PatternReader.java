@@ -0,0 +1,309 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/*
+ * Reads Life patterns in the RLE, Life 1.06 and plaintext (.cells) formats, telling a Sink about each live cell
+ * as soon as it is read. The file is read in blocks of bytes and never held as a whole or turned into Strings,
+ * so a very large pattern loads with memory that follows the live cells stored by the sink, not the file size.
+ *
+ * The format is recognised from the start of the file rather than its name:
+ *   "#Life 1.06", or a number and a space  Life 1.06, one "x y" pair per live cell, relative to the offset
+ *   '!', '.', 'O' or '*'                   plaintext, one line per row, 'O' or '*' alive and anything else dead
+ *   anything else ('#' comments, "x = ...", or a run such as "3o$") RLE, runs of 'b' (dead), 'o' (alive) and '$'
+ *                                          (end of row), ending at '!'
+ * In a Sink, x is the column and y the row, with y growing downwards as on the board.
+ */
+public final class PatternReader {
+
+    // Where the cells of a pattern go
+    public interface Sink {
+
+        // The cell in column x, row y is alive
+        void cell(long x, long y);
+
+        // The pattern gives its rule, such as "B3/S23" (RLE only)
+        default void rule(String rule) {
+        }
+    }
+
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final int EOF = -1;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_BYTES];
+    private int position;   // The next byte of buffer to read
+    private int limit;      // The number of bytes in buffer
+    private long cells;     // The number of live cells read so far
+
+
+    private PatternReader(InputStream in) {
+        this.in = in;
+    }
+
+
+    /*
+     * Read the pattern in the file, placing its top left corner (or its origin, for Life 1.06) at column x, row y.
+     * Return the number of live cells read.
+     */
+    public static long read(Path file, long x, long y, Sink sink) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return new PatternReader(in).read(x, y, sink);
+        }
+    }
+
+    /*
+     * A sink that makes the cells alive on the board of an engine and switches it to the pattern's rule, if it gives
+     * one (IllegalArgumentException if the engine can not run it). Cells that fall outside a torus board are ignored;
+     * an engine showing a window of an unbounded universe gets every cell, inside the window or not.
+     */
+    public static Sink into(Engine engine) {
+        return new Sink() {
+            final boolean window = engine instanceof WindowEngine;
+            final Universe universe = window ? ((WindowEngine) engine).getUniverse() : null;
+            final long left = window ? ((WindowEngine) engine).getLeft() : 0;
+            final long top = window ? ((WindowEngine) engine).getTop() : 0;
+
+            public void cell(long x, long y) {
+                if (window)
+                    universe.setAlive(left + x, top + y, true);
+                else if (x >= 0 && x < engine.getColumns() && y >= 0 && y < engine.getRows())
+                    engine.setAlive((int) y, (int) x, true);
+            }
+
+            public void rule(String rule) {
+                int colon = rule.indexOf(':');  // Drop a bounded grid suffix such as ":T100,100"
+                engine.setRule(Rule.parse(colon >= 0 ? rule.substring(0, colon) : rule));
+            }
+        };
+    }
+
+    private long read(long x, long y, Sink sink) throws IOException {
+        int c = peek();
+        if (c == '#') {
+            if (startsWith("#Life 1.06"))
+                readLife106(x, y, sink);
+            else if (startsWith("#Life"))
+                throw new IOException("Only version 1.06 of the Life format can be read");
+            else
+                readRle(x, y, sink);
+        } else if (startsWithNumber()) {
+            readLife106(x, y, sink);
+        } else if (c == '!' || c == '.' || c == 'O' || c == '*') {
+            readPlaintext(x, y, sink);
+        } else {
+            readRle(x, y, sink);
+        }
+        return cells;
+    }
+
+
+    /*
+     * RLE: '#' lines are comments, a line starting with 'x' is the header ("x = 3, y = 3, rule = B3/S23"), and the
+     * rest is runs, each an optional count and a tag: 'b' dead cells, '$' ends that many rows, '!' ends the pattern,
+     * 'o' live cells. In multi-state patterns '.' is dead and 'A' to 'X' are the other states, all taken as alive.
+     */
+    private void readRle(long x, long y, Sink sink) throws IOException {
+        long column = x, row = y;
+        boolean lineStart = true;
+        boolean header = false;   // True once the header line has been read
+        int c;
+        while ((c = next()) != EOF) {
+            if (lineStart && c == '#') {
+                skipLine();
+                continue;
+            }
+            if (lineStart && c == 'x' && !header) {
+                readRleHeader(sink);
+                header = true;
+                continue;
+            }
+            lineStart = c == '\n' || c == '\r';
+            if (isSpace(c))
+                continue;
+
+            long count = 1;
+            if (isDigit(c)) {
+                count = c - '0';
+                while (isDigit(c = next()))
+                    count = count * 10 + (c - '0');
+                if (c == EOF)
+                    throw new IOException("RLE ends in the middle of a run");
+            }
+            if (c == '!') {
+                return;
+            } else if (c == '$') {
+                row += count;
+                column = x;
+            } else if (c == 'b' || c == '.') {
+                column += count;
+            } else if (c == 'o' || (c >= 'A' && c <= 'X')) {
+                for (long i = 0; i < count; i++)
+                    sink.cell(column++, row);
+                cells += count;
+            } else {
+                throw new IOException("Unexpected '" + (char) c + "' in RLE");
+            }
+        }
+    }
+
+    // Read the rest of an RLE header line after its 'x', telling the sink the rule if it gives one
+    private void readRleHeader(Sink sink) throws IOException {
+        StringBuilder line = new StringBuilder("x");
+        int c;
+        while ((c = next()) != EOF && c != '\n' && c != '\r')
+            line.append((char) c);   // The header is short, unlike the rest of the file
+        for (String part : line.toString().split(",")) {
+            String[] keyValue = part.split("=", 2);
+            if (keyValue.length == 2 && keyValue[0].trim().equals("rule"))
+                sink.rule(keyValue[1].trim());
+        }
+    }
+
+
+    /*
+     * Life 1.06: '#' lines are comments, every other line is the column and row of a live cell.
+     */
+    private void readLife106(long x, long y, Sink sink) throws IOException {
+        int c;
+        while ((c = peek()) != EOF) {
+            if (c == '#') {
+                skipLine();
+            } else if (isSpace(c)) {
+                next();
+            } else {
+                long column = readNumber();
+                long row = readNumber();
+                sink.cell(x + column, y + row);
+                cells++;
+                skipLine();
+            }
+        }
+    }
+
+    // Read a whole number, skipping spaces before it
+    private long readNumber() throws IOException {
+        int c = next();
+        while (c == ' ' || c == '\t')
+            c = next();
+        boolean negative = c == '-';
+        if (negative || c == '+')
+            c = next();
+        if (!isDigit(c))
+            throw new IOException("Expected a number in Life 1.06 pattern");
+        long n = 0;
+        for (; isDigit(c); c = next())
+            n = n * 10 + (c - '0');
+        if (c != EOF)
+            position--;   // Leave the byte after the number to be read again
+        return negative ? -n : n;
+    }
+
+
+    /*
+     * Plaintext: lines starting with '!' are comments, each other line is a row with 'O' or '*' for live cells.
+     */
+    private void readPlaintext(long x, long y, Sink sink) throws IOException {
+        long column = x, row = y;
+        boolean lineStart = true;
+        int c;
+        while ((c = next()) != EOF) {
+            if (lineStart && c == '!') {
+                skipLine();
+                continue;
+            }
+            if (c == '\r' && peek() == '\n')
+                continue;   // The '\n' of a Windows line ending ends the row
+            if (c == '\n' || c == '\r') {
+                row++;
+                column = x;
+                lineStart = true;
+                continue;
+            }
+            lineStart = false;
+            if (c == 'O' || c == '*') {
+                sink.cell(column, row);
+                cells++;
+            }
+            column++;
+        }
+    }
+
+
+    // Return the next byte, or EOF
+    private int next() throws IOException {
+        if (position == limit && !fill())
+            return EOF;
+        return buffer[position++] & 0xFF;
+    }
+
+    // Return the next byte without reading it, or EOF
+    private int peek() throws IOException {
+        if (position == limit && !fill())
+            return EOF;
+        return buffer[position] & 0xFF;
+    }
+
+    // Read the next block of the file, return false at the end
+    private boolean fill() throws IOException {
+        int n = in.read(buffer, 0, buffer.length);
+        while (n == 0)
+            n = in.read(buffer, 0, buffer.length);
+        position = 0;
+        limit = Math.max(0, n);
+        return n > 0;
+    }
+
+    // Return true if the unread bytes start with the text, which must be shorter than the buffer. Nothing is read.
+    private boolean startsWith(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++)
+            if (peekAt(i) != text.charAt(i))
+                return false;
+        return true;
+    }
+
+    /*
+     * Return true if the unread bytes start with a whole number followed by a space, as a line of Life 1.06 does.
+     * A headerless RLE file can start with a digit too, but its run count is followed by a tag ("3o$"). Nothing is read.
+     */
+    private boolean startsWithNumber() throws IOException {
+        int i = peekAt(0) == '-' ? 1 : 0;
+        int first = i;
+        while (isDigit(peekAt(i)))
+            i++;
+        return i > first && (peekAt(i) == ' ' || peekAt(i) == '\t');
+    }
+
+    // Return the byte the given distance ahead without reading anything, or EOF if the file (or the buffer) ends first
+    private int peekAt(int ahead) throws IOException {
+        if (limit - position <= ahead) {  // Move what is left to the start and top up the buffer
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+            int n;
+            while (limit <= ahead && limit < buffer.length && (n = in.read(buffer, limit, buffer.length - limit)) >= 0)
+                limit += n;
+        }
+        return position + ahead < limit ? buffer[position + ahead] & 0xFF : EOF;
+    }
+
+    // Read up to and including the end of the line
+    private void skipLine() throws IOException {
+        int c;
+        while ((c = next()) != EOF && c != '\n')
+            if (c == '\r') {
+                if (peek() == '\n')
+                    next();
+                return;
+            }
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isSpace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * A life-like rule in B/S notation: "B3/S23" means a dead cell with 3 live neighbours is born and a live cell with
+ * 2 or 3 live neighbours survives; every other cell is dead in the next generation. The older "23/3" (survival/birth)
+ * form is accepted too.
+ *
+ * A rule is compiled into the forms the engines need, so every engine evaluates it without branches:
+ *   - a 512 entry table indexed by a 3 by 3 neighbourhood, for engines that look at cells one at a time;
+ *   - masks for apply, which computes 64 cells at once from the bit-sliced neighbour counts of PackedEngine.
+ * B3/S23 itself is also flagged (isConway), so the packed engines can use its shorter circuit instead of apply.
+ * Rules are immutable.
+ */
+public final class Rule {
+
+    public static final Rule CONWAY = parse("B3/S23");   // The rule described in the ReadMe, and the default
+    public static final int CENTRE = 1 << 4;  // The centre cell of a neighbourhood, in which bit (dy + 1) * 3 + (dx + 1) is the cell at (dx, dy)
+
+    private final int birth;       // Bit n is set if a dead cell with n live neighbours is born
+    private final int survival;    // Bit n is set if a live cell with n live neighbours survives
+    private final boolean[] table = new boolean[512];  // Next state of the centre of each 3 by 3 neighbourhood
+    private final boolean conway;  // True for B3/S23
+
+    // Masks for apply: bn is all ones if a dead cell with n neighbours is born, dn if birth and survival differ for n
+    private final long b0, b1, b2, b3, b4, b5, b6, b7, b8;
+    private final long d0, d1, d2, d3, d4, d5, d6, d7, d8;
+
+
+    private Rule(int birth, int survival) {
+        this.birth = birth;
+        this.survival = survival;
+        conway = birth == 1 << 3 && survival == (1 << 2 | 1 << 3);
+        for (int neighbourhood = 0; neighbourhood < table.length; neighbourhood++) {
+            boolean alive = (neighbourhood & CENTRE) != 0;
+            table[neighbourhood] = next(alive, Integer.bitCount(neighbourhood & ~CENTRE));
+        }
+        b0 = mask(birth, 0); b1 = mask(birth, 1); b2 = mask(birth, 2);
+        b3 = mask(birth, 3); b4 = mask(birth, 4); b5 = mask(birth, 5);
+        b6 = mask(birth, 6); b7 = mask(birth, 7); b8 = mask(birth, 8);
+        int differ = birth ^ survival;
+        d0 = mask(differ, 0); d1 = mask(differ, 1); d2 = mask(differ, 2);
+        d3 = mask(differ, 3); d4 = mask(differ, 4); d5 = mask(differ, 5);
+        d6 = mask(differ, 6); d7 = mask(differ, 7); d8 = mask(differ, 8);
+    }
+
+
+    /*
+     * Parse a rule such as "B3/S23", "b36/s23", "S23/B3" or "23/3". Throws IllegalArgumentException if it is not one.
+     */
+    public static Rule parse(String text) {
+        String rule = text.trim().toUpperCase().replace(" ", "");
+        String[] parts = rule.split("/", -1);
+        if (parts.length != 2)
+            throw new IllegalArgumentException("Not a rule: " + text);
+        int birth, survival;
+        if (parts[0].startsWith("B") && parts[1].startsWith("S")) {
+            birth = counts(parts[0].substring(1), text);
+            survival = counts(parts[1].substring(1), text);
+        } else if (parts[0].startsWith("S") && parts[1].startsWith("B")) {
+            survival = counts(parts[0].substring(1), text);
+            birth = counts(parts[1].substring(1), text);
+        } else {
+            survival = counts(parts[0], text);  // The older survival/birth form
+            birth = counts(parts[1], text);
+        }
+        return new Rule(birth, survival);
+    }
+
+    // The set of neighbour counts in a string of digits, as bits
+    private static int counts(String digits, String text) {
+        int set = 0;
+        for (int i = 0; i < digits.length(); i++) {
+            char c = digits.charAt(i);
+            if (c < '0' || c > '8')
+                throw new IllegalArgumentException("Not a rule: " + text);
+            set |= 1 << (c - '0');
+        }
+        return set;
+    }
+
+    private static long mask(int set, int n) {
+        return (set & (1 << n)) != 0 ? -1L : 0L;
+    }
+
+
+    // Return true if a cell that is alive (or not) with the given number of live neighbours is alive next generation
+    public boolean next(boolean alive, int neighbours) {
+        return ((alive ? survival : birth) & (1 << neighbours)) != 0;
+    }
+
+    // Return true if the centre of the 3 by 3 neighbourhood (bit (dy + 1) * 3 + (dx + 1) set for each live cell) is alive next generation
+    public boolean next(int neighbourhood) {
+        return table[neighbourhood];
+    }
+
+    // Return true if the rule is B3/S23
+    public boolean isConway() {
+        return conway;
+    }
+
+    // Return true if dead cells with no live neighbours are born, so empty space does not stay empty
+    public boolean birthOnZero() {
+        return (birth & 1) != 0;
+    }
+
+
+    /*
+     * The next state of 64 cells at once: bit i of the result is the next state of the cell at bit i of alive,
+     * whose live neighbour count is eights * 8 + fours * 4 + twos * 2 + ones at bit i.
+     * Each count picks its entry of the rule through a tree of bitwise selects, so the cost is the same for
+     * every rule. A count of 8 only happens with the other bits 0, so it is handled on its own at the end.
+     */
+    public long apply(long alive, long ones, long twos, long fours, long eights) {
+        // The entry for each count from 0 to 7, birth or survival depending on alive
+        long e0 = b0 ^ (d0 & alive);
+        long e1 = b1 ^ (d1 & alive);
+        long e2 = b2 ^ (d2 & alive);
+        long e3 = b3 ^ (d3 & alive);
+        long e4 = b4 ^ (d4 & alive);
+        long e5 = b5 ^ (d5 & alive);
+        long e6 = b6 ^ (d6 & alive);
+        long e7 = b7 ^ (d7 & alive);
+        // Select by the ones, then the twos, then the fours of the count
+        long e01 = e0 ^ ((e0 ^ e1) & ones);
+        long e23 = e2 ^ ((e2 ^ e3) & ones);
+        long e45 = e4 ^ ((e4 ^ e5) & ones);
+        long e67 = e6 ^ ((e6 ^ e7) & ones);
+        long e03 = e01 ^ ((e01 ^ e23) & twos);
+        long e47 = e45 ^ ((e45 ^ e67) & twos);
+        long e07 = e03 ^ ((e03 ^ e47) & fours);
+        long e8 = b8 ^ (d8 & alive);
+        return e07 ^ ((e07 ^ e8) & eights);
+    }
+
+
+    public String toString() {
+        StringBuilder s = new StringBuilder("B");
+        for (int n = 0; n <= 8; n++)
+            if ((birth & (1 << n)) != 0)
+                s.append(n);
+        s.append("/S");
+        for (int n = 0; n <= 8; n++)
+            if ((survival & (1 << n)) != 0)
+                s.append(n);
+        return s.toString();
+    }
+
+    public boolean equals(Object o) {
+        return o instanceof Rule && ((Rule) o).birth == birth && ((Rule) o).survival == survival;
+    }
+
+    public int hashCode() {
+        return birth * 512 + survival;
+    }
+}
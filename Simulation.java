@@ -0,0 +1,162 @@
+import java.util.Random;
+
+/*
+ * An engine plus the generation count, with nothing to do with Swing.
+ * Board and the headless runner both drive the game through this class.
+ */
+public class Simulation {
+
+    private final Engine engine;     // Holds the board and computes each generation
+    private final boolean oneThread; // True if the engine steps on the calling thread only, so its allocation can be counted
+    private long generation = 0;     // Holds the generation number, 0 at the start and after a reset
+    private SimulationMetrics metrics;  // Told about every step, null if metrics are off
+    private CycleDetector cycles;    // Told the hash of every generation, null if cycles are not looked for
+    private long fastForwarded;      // Generations counted by run without being stepped, because the board was in a cycle
+
+
+    public Simulation(Engine engine) {
+        this.engine = engine;
+        oneThread = !(engine instanceof ParallelEngine || engine instanceof DistributedEngine);
+    }
+
+    public Engine getEngine() {
+        return engine;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    // Time every step into the metrics, or stop if metrics is null
+    public void setMetrics(SimulationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public SimulationMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Look for the board repeating from the current generation on, or stop if cycles is null
+    public void setCycleDetector(CycleDetector cycles) {
+        this.cycles = cycles;
+        edited();
+    }
+
+    public CycleDetector getCycleDetector() {
+        return cycles;
+    }
+
+    // Return the number of generations run has skipped over since the simulation was created
+    public long getFastForwarded() {
+        return fastForwarded;
+    }
+
+    // Return the period of the cycle the board has entered (1 for a still life), or 0 if none has been found
+    public int getCyclePeriod() {
+        return cycles != null ? cycles.getPeriod() : 0;
+    }
+
+    /*
+     * Say the board was changed other than by stepping (cells edited or the rule changed), so generations before
+     * now no longer predict what comes next.
+     */
+    public void edited() {
+        if (cycles != null) {
+            cycles.reset();
+            cycles.observe(generation, engine.getHash());
+        }
+    }
+
+    // Compute the next generation
+    public void step() {
+        if (metrics == null) {
+            engine.step();
+            generation++;
+        } else {
+            // Only the calling thread's allocation is counted: -1 for engines that step on other threads or processes
+            long allocated = oneThread ? SimulationMetrics.threadAllocatedBytes() : -1;
+            long start = System.nanoTime();
+            engine.step();
+            long nanos = System.nanoTime() - start;
+            generation++;
+            if (allocated >= 0)
+                allocated = SimulationMetrics.threadAllocatedBytes() - allocated;
+            metrics.recordStep(nanos, generation, engine.getChangedCells(), allocated);
+            if (engine instanceof ActiveEngine)
+                metrics.recordSkippedTiles(((ActiveEngine) engine).getSkippedTiles(), ((ActiveEngine) engine).getTileCount());
+        }
+        if (cycles != null)
+            cycles.observe(generation, engine.getHash());
+    }
+
+
+
+    /*
+     * Compute up to the given number of generations and return how many were computed.
+     * If untilStable is true, stop early once a generation changes no cells (a still life or an empty board), or
+     * once the board enters a cycle if a cycle detector is set. Otherwise a cycle is fast-forwarded: only the
+     * generations needed to reach the same point in the cycle are stepped, and the rest are added to the count.
+     * Engines that do not count changed cells only stop early on a cycle.
+     * When nothing needs to see each generation (no cycle detector, no metrics and untilStable false), an unbounded
+     * engine advances its universe by all of them at once, so HashLife jumps ahead in powers of two, and the
+     * distributed engine waits for its workers once per halo exchange rather than once per generation.
+     */
+    public long run(long generations, boolean untilStable) {
+        if (!untilStable && cycles == null && metrics == null) {
+            if (engine instanceof WindowEngine) {
+                ((WindowEngine) engine).advance(generations);
+                generation += generations;
+                return generations;
+            }
+            if (engine instanceof DistributedEngine) {
+                ((DistributedEngine) engine).advance(generations);
+                generation += generations;
+                return generations;
+            }
+        }
+        for (long g = 0; g < generations; g++) {
+            step();
+            if (untilStable && engine.getChangedCells() == 0)
+                return g + 1;
+            int period = getCyclePeriod();
+            if (period != 0) {
+                if (untilStable)
+                    return g + 1;
+                long remaining = generations - g - 1;
+                for (long r = remaining % period; r > 0; r--)
+                    step();
+                generation += remaining - remaining % period;  // Whole periods bring the board back to where it is
+                fastForwarded += remaining - remaining % period;
+                return generations;
+            }
+        }
+        return generations;
+    }
+
+    // Clear the board and set the generation count back to 0
+    public void reset() {
+        engine.clear();
+        generation = 0;
+        edited();
+    }
+
+    // Replace the board with packed rows (see Engine.copyTo) and set the generation count, to resume a saved run
+    public void restore(long[] packed, long generation) {
+        engine.copyFrom(packed);
+        restored(generation);
+    }
+
+    // Set the generation count after the board was put back some other way, such as a whole universe from a checkpoint
+    public void restored(long generation) {
+        this.generation = generation;
+        edited();
+    }
+
+    // Fill the board randomly, each cell being alive with the given probability
+    public void randomise(double density, Random random) {
+        for (int r = 0; r < engine.getRows(); r++)
+            for (int c = 0; c < engine.getColumns(); c++)
+                engine.setAlive(r, c, random.nextDouble() < density);
+        edited();
+    }
+}
@@ -0,0 +1,188 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/*
+ * Live numbers about a running simulation: generation rate, step and render latency percentiles, dropped frames,
+ * population, changed cells, tiles skipped and allocation per generation. They are published over JMX (see register) and can be
+ * drawn over the board by Panel.
+ *
+ * Simulation records every step and Panel every render. Recording allocates nothing, so turning metrics on does
+ * not change what they measure; the numbers are only turned into objects when something reads them.
+ */
+public class SimulationMetrics implements SimulationMetricsMBean {
+
+    private static final com.sun.management.ThreadMXBean ALLOCATION = allocationBean();  // null if not supported
+
+    private final LatencyHistogram stepLatency = new LatencyHistogram();    // Recorded by the simulation thread
+    private final LatencyHistogram renderLatency = new LatencyHistogram();  // Recorded by the Event Dispatch Thread
+    private FramePipeline frames;                  // Where dropped frames are counted, null if there is no screen
+
+    private volatile long generation;
+    private volatile long changedCells = -1;
+    private volatile long allocatedBytes = -1;
+    private volatile long population;
+    private volatile int skippedTiles = -1;
+    private volatile int tileCount = -1;
+    private volatile double generationRate;
+    private volatile long lastStep;                // System.nanoTime of the last step
+    private long windowStart;                      // Start of the window the generation rate is measured over
+    private long windowGenerations;                // Generations computed in that window
+
+
+    public void setFrames(FramePipeline frames) {
+        this.frames = frames;
+    }
+
+    /*
+     * Publish the metrics as the MBean "GameOfLife:type=Simulation,name=" + name. Returns false (with the reason on
+     * standard error) if that fails, for example because the name is taken.
+     */
+    public boolean register(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                    new ObjectName("GameOfLife:type=Simulation,name=" + ObjectName.quote(name)));
+            return true;
+        } catch (JMException e) {
+            System.err.println("Metrics not published over JMX: " + e);
+            return false;
+        }
+    }
+
+
+    // Bytes allocated by the current thread so far, or -1 if the JVM does not count them. Allocates nothing.
+    static long threadAllocatedBytes() {
+        return ALLOCATION != null ? ALLOCATION.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    // Called by the simulation thread after each step
+    void recordStep(long nanos, long generation, long changedCells, long allocatedBytes) {
+        stepLatency.record(nanos);
+        this.generation = generation;
+        this.changedCells = changedCells;
+        this.allocatedBytes = allocatedBytes;
+
+        long now = System.nanoTime();
+        if (now - lastStep > 1_000_000_000L) {  // Stopped for a while, start measuring the rate again
+            windowStart = now;
+            windowGenerations = 0;
+        }
+        lastStep = now;
+        windowGenerations++;
+        if (now - windowStart >= 500_000_000L) {
+            generationRate = windowGenerations * 1e9 / (now - windowStart);
+            windowStart = now;
+            windowGenerations = 0;
+        }
+    }
+
+    // Called by the simulation thread after each step of an engine that skips tiles (see ActiveEngine)
+    void recordSkippedTiles(int skippedTiles, int tileCount) {
+        this.skippedTiles = skippedTiles;
+        this.tileCount = tileCount;
+    }
+
+    // Called by the renderer after drawing a frame
+    void recordRender(long nanos) {
+        renderLatency.record(nanos);
+    }
+
+    // Called with the population of a frame as it is shown, or after a run
+    void recordPopulation(long population) {
+        this.population = population;
+    }
+
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public double getGenerationRate() {
+        return System.nanoTime() - lastStep > 1_000_000_000L ? 0 : generationRate;
+    }
+
+    public long getStepCount() {
+        return stepLatency.getCount();
+    }
+
+    public double getStepLatencyMeanMicros() {
+        return stepLatency.getMean() / 1e3;
+    }
+
+    public double getStepLatencyP50Micros() {
+        return stepLatency.getPercentile(50) / 1e3;
+    }
+
+    public double getStepLatencyP90Micros() {
+        return stepLatency.getPercentile(90) / 1e3;
+    }
+
+    public double getStepLatencyP99Micros() {
+        return stepLatency.getPercentile(99) / 1e3;
+    }
+
+    public double getStepLatencyP999Micros() {
+        return stepLatency.getPercentile(99.9) / 1e3;
+    }
+
+    public double getStepLatencyMaxMicros() {
+        return stepLatency.getMax() / 1e3;
+    }
+
+    public double getRenderLatencyP50Micros() {
+        return renderLatency.getPercentile(50) / 1e3;
+    }
+
+    public double getRenderLatencyP99Micros() {
+        return renderLatency.getPercentile(99) / 1e3;
+    }
+
+    public double getRenderLatencyMaxMicros() {
+        return renderLatency.getMax() / 1e3;
+    }
+
+    public long getDroppedFrames() {
+        return frames != null ? frames.getDroppedFrames() : 0;
+    }
+
+    public long getPopulation() {
+        return population;
+    }
+
+    public long getChangedCells() {
+        return changedCells;
+    }
+
+    public int getSkippedTiles() {
+        return skippedTiles;
+    }
+
+    public int getTileCount() {
+        return tileCount;
+    }
+
+    public long getAllocatedBytesPerGeneration() {
+        return allocatedBytes;
+    }
+
+    public long getHeapUsedBytes() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    public void reset() {
+        stepLatency.reset();
+        renderLatency.reset();
+    }
+
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean))
+            return null;
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threads;
+        if (!bean.isThreadAllocatedMemorySupported() || !bean.isThreadAllocatedMemoryEnabled())
+            return null;
+        return bean;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * What SimulationMetrics publishes over JMX, for example to jconsole or VisualVM. Latencies are in microseconds.
+ */
+public interface SimulationMetricsMBean {
+
+    // The generation of the last step
+    long getGeneration();
+
+    // Generations computed per second, over about the last second (0 when stopped)
+    double getGenerationRate();
+
+    // Number of steps timed since the last reset
+    long getStepCount();
+
+    double getStepLatencyMeanMicros();
+
+    double getStepLatencyP50Micros();
+
+    double getStepLatencyP90Micros();
+
+    double getStepLatencyP99Micros();
+
+    double getStepLatencyP999Micros();
+
+    double getStepLatencyMaxMicros();
+
+    // Time to turn a frame into pixels on the screen
+    double getRenderLatencyP50Micros();
+
+    double getRenderLatencyP99Micros();
+
+    double getRenderLatencyMaxMicros();
+
+    // Generations that were computed but never shown, because the screen could not keep up
+    long getDroppedFrames();
+
+    // Live cells in the last frame shown (or the last count made)
+    long getPopulation();
+
+    // Cells born or died in the last step, -1 if the engine does not count them
+    long getChangedCells();
+
+    // Tiles not recomputed in the last step by an engine that skips them (active), -1 for other engines
+    int getSkippedTiles();
+
+    // Tiles the board is split into by an engine that skips them, -1 for other engines
+    int getTileCount();
+
+    // Bytes allocated by the simulation thread during the last step, -1 if the JVM does not count them or the engine
+    // steps on other threads (parallel, distributed), whose allocation the simulation thread can not see
+    long getAllocatedBytesPerGeneration();
+
+    // Bytes of heap in use
+    long getHeapUsedBytes();
+
+    // Clear the latency histograms
+    void reset();
+}
@@ -0,0 +1,173 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/*
+ * Steps a Simulation on its own thread, off the Event Dispatch Thread.
+ *
+ * While running, the thread steps as fast as it can or at a target rate, publishing snapshots into a FramePipeline
+ * for the renderer. Everything else that touches the board (mouse edits, Randomise, Reset, One Step) is submitted
+ * as a command and run by the simulation thread between generations, so the board is only ever touched by one
+ * thread and the stepping loop takes no locks.
+ *
+ * A command or step that throws is reported to the error handler and the thread carries on; a step that throws also
+ * stops the game, rather than failing again every generation.
+ *
+ * If the simulation has a CycleDetector, the runner says when the board enters a cycle or is edited out of one,
+ * and can pause itself on a cycle so a board that has settled down stops using the processor.
+ */
+public class SimulationRunner implements Runnable {
+
+    private final Simulation simulation;    // Only used by the simulation thread
+    private final FramePipeline frames;     // Where snapshots are published
+    private final ConcurrentLinkedQueue<Runnable> commands = new ConcurrentLinkedQueue<>();  // Run between generations
+    private final Thread thread;
+    private volatile boolean running;       // True while generations are being computed
+    private volatile long stepNanos;        // Time between generations, 0 for as fast as possible
+    private volatile boolean pauseOnCycle;  // Stop running when the board enters a cycle
+    private volatile CycleListener cycleListener;  // Told when a cycle is found or forgotten, may be null
+    private volatile Consumer<RuntimeException> onError = e -> { };  // Told about commands and steps that throw
+    private int reportedPeriod;             // The period last told to the listener, 0 for none
+    private boolean edited;                 // True if a command since the last generation edited the board
+
+
+    // Told on the simulation thread when the board enters a cycle, or leaves it because it was edited
+    public interface CycleListener {
+
+        // period is 0 if there is no longer a cycle, otherwise onset is its first generation
+        void cycleChanged(int period, long onset, boolean paused);
+    }
+
+
+    public SimulationRunner(Simulation simulation, FramePipeline frames) {
+        this.simulation = simulation;
+        this.frames = frames;
+        thread = new Thread(this, "Simulation");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Start or stop computing generations
+    public void setRunning(boolean running) {
+        this.running = running;
+        LockSupport.unpark(thread);
+    }
+
+    // Set the number of generations per second while running, 0 for as fast as possible
+    public void setTargetRate(double generationsPerSecond) {
+        stepNanos = generationsPerSecond > 0 ? (long) (1e9 / generationsPerSecond) : 0;
+        LockSupport.unpark(thread);
+    }
+
+    // Stop running when the board enters a cycle, if the simulation has a cycle detector
+    public void setPauseOnCycle(boolean pauseOnCycle) {
+        this.pauseOnCycle = pauseOnCycle;
+    }
+
+    public void setCycleListener(CycleListener cycleListener) {
+        this.cycleListener = cycleListener;
+    }
+
+    // Set what is done when a command or step throws, it is called on the simulation thread
+    public void setErrorHandler(Consumer<RuntimeException> onError) {
+        this.onError = onError;
+    }
+
+    // Run a command that does not edit the board (such as One Step) on the simulation thread, then show the board
+    public void submit(Runnable command) {
+        commands.add(command);
+        LockSupport.unpark(thread);
+    }
+
+    // Run a command that edits the cells or the rule on the simulation thread, then look for cycles afresh
+    public void submitEdit(Runnable command) {
+        submit(() -> {
+            edited = true;   // Set first, since a command that throws part way may still have changed some cells
+            command.run();
+        });
+    }
+
+
+    public void run() {
+        long nextStep = System.nanoTime();
+        boolean wasRunning = false;
+        while (true) {
+            boolean changed = false;
+            for (Runnable command = commands.poll(); command != null; command = commands.poll()) {
+                try {
+                    command.run();
+                } catch (RuntimeException e) {
+                    onError.accept(e);
+                }
+                changed = true;
+            }
+            if (edited) {
+                simulation.edited();  // Cells or the rule changed, so look for a cycle afresh
+                edited = false;
+            }
+            if (changed)
+                checkCycle();
+
+            if (!running) {
+                if (changed || wasRunning)
+                    publish();  // Show the edited or final board
+                wasRunning = false;
+                LockSupport.park(this);
+                continue;
+            }
+            if (!wasRunning)
+                nextStep = System.nanoTime();
+            wasRunning = true;
+
+            long now = System.nanoTime();
+            long delay = stepNanos;
+            if (delay > 0 && now < nextStep) {
+                LockSupport.parkNanos(this, nextStep - now);  // Woken early by commands and rate changes
+                continue;
+            }
+            try {
+                simulation.step();
+                frames.publish(simulation, changed);
+            } catch (RuntimeException e) {
+                running = false;
+                onError.accept(e);
+                continue;  // The board as it is now is shown once stopped
+            }
+            nextStep = delay > 0 ? Math.max(nextStep + delay, now) : now;
+            if (simulation.getCyclePeriod() != reportedPeriod)
+                checkCycle();
+        }
+    }
+
+    // Show the board as it is, even if nothing is waiting to be drawn
+    private void publish() {
+        try {
+            frames.publish(simulation, true);
+        } catch (RuntimeException e) {
+            onError.accept(e);
+        }
+    }
+
+    // Tell the listener if the cycle found has changed, pausing first if asked to
+    private void checkCycle() {
+        int period = simulation.getCyclePeriod();
+        if (period == reportedPeriod)
+            return;
+        reportedPeriod = period;
+        boolean paused = false;
+        if (period != 0 && pauseOnCycle && running) {
+            running = false;
+            paused = true;
+        }
+        CycleListener listener = cycleListener;
+        if (listener != null)
+            listener.cycleChanged(period, period != 0 ? simulation.getCycleDetector().getOnset() : 0, paused);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * An unbounded universe that stores only its live cells, in a LongSet of packed coordinates.
+ * Each generation every live cell adds one to the count of each of its eight neighbours in a LongIntMap, and the
+ * cells whose counts the rule keeps alive make up the next generation. Both tables are reused, so memory and time follow the
+ * population rather than the area the pattern covers.
+ *
+ * A cell (x, y) is packed as x in the high 32 bits and y in the low 32 bits, so coordinates must fit in an int.
+ * Neighbours of cells on the very edge of that range wrap around to the other side.
+ */
+public class SparseUniverse implements Universe {
+
+    private LongSet live = new LongSet();           // The live cells of the current generation
+    private LongSet next = new LongSet();           // The next generation is built here, then the two sets are swapped
+    private final LongIntMap counts = new LongIntMap();  // Live neighbour count of every cell next to a live cell
+    private long generation;                        // Number of generations the universe has been advanced
+    private long changedCells;                      // Number of cells that were born or died in the last generation
+    private Rule rule = Rule.CONWAY;                // Which cells are born and survive
+    private long hash;                              // The XOR of Zobrist.cell of every live cell
+
+
+    public boolean isAlive(long x, long y) {
+        return fits(x, y) && live.contains(pack((int) x, (int) y));
+    }
+
+    public void setAlive(long x, long y, boolean alive) {
+        if (!fits(x, y))
+            throw new IllegalArgumentException("Cell (" + x + ", " + y + ") is outside the sparse universe");
+        long cell = pack((int) x, (int) y);
+        if (alive ? live.add(cell) : live.remove(cell))
+            hash ^= Zobrist.cell(cell);  // The cell flipped
+    }
+
+    public void clear() {
+        live.clear();
+        hash = 0;
+        generation = 0;
+    }
+
+    public void advance(long generations) {
+        for (long g = 0; g < generations; g++)
+            step();
+    }
+
+    public Rule getRule() {
+        return rule;
+    }
+
+    public void setRule(Rule rule) {
+        if (rule.birthOnZero())
+            throw new IllegalArgumentException("Rule " + rule + " would fill the unbounded universe");
+        this.rule = rule;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public long getPopulation() {
+        return live.size();
+    }
+
+    public long getChangedCells() {
+        return changedCells;
+    }
+
+    public long getHash() {
+        return hash;
+    }
+
+    public void forEachAlive(PatternReader.Sink sink) {
+        for (int slot = live.next(0); slot >= 0; slot = live.next(slot + 1)) {
+            long cell = live.keyAt(slot);
+            sink.cell((int) (cell >> 32), (int) cell);
+        }
+    }
+
+
+    // Compute the next generation
+    private void step() {
+        counts.clear();
+        for (int slot = live.next(0); slot >= 0; slot = live.next(slot + 1)) {
+            long cell = live.keyAt(slot);
+            int x = (int) (cell >> 32);
+            int y = (int) cell;
+            counts.add(pack(x - 1, y - 1), 1);  // Top left
+            counts.add(pack(x, y - 1), 1);      // Directly above
+            counts.add(pack(x + 1, y - 1), 1);  // Top right
+            counts.add(pack(x - 1, y), 1);      // Adjacent left
+            counts.add(pack(x + 1, y), 1);      // Adjacent right
+            counts.add(pack(x - 1, y + 1), 1);  // Bottom left
+            counts.add(pack(x, y + 1), 1);      // Directly below
+            counts.add(pack(x + 1, y + 1), 1);  // Bottom right
+        }
+
+        next.clear();
+        long survivors = 0;
+        long nextHash = 0;  // Rebuilt from the cells added, which costs no more than adding them
+        for (int slot = counts.next(0); slot >= 0; slot = counts.next(slot + 1)) {
+            long cell = counts.keyAt(slot);
+            boolean alive = live.contains(cell);
+            if (rule.next(alive, counts.valueAt(slot))) {
+                next.add(cell);
+                nextHash ^= Zobrist.cell(cell);
+                if (alive)
+                    survivors++;
+            }
+        }
+        if (rule.next(true, 0)) { // Live cells with no live neighbours are not in counts
+            for (int slot = live.next(0); slot >= 0; slot = live.next(slot + 1)) {
+                long cell = live.keyAt(slot);
+                if (counts.get(cell) == 0) {
+                    next.add(cell);
+                    nextHash ^= Zobrist.cell(cell);
+                    survivors++;
+                }
+            }
+        }
+        changedCells = (next.size() - survivors) + (live.size() - survivors);  // Births plus deaths
+
+        LongSet old = live; // Swap the sets
+        live = next;
+        next = old;
+        hash = nextHash;
+        generation++;
+    }
+
+    private static long pack(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    private static boolean fits(long x, long y) {
+        return x == (int) x && y == (int) y;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * An unbounded plane of cells with no edges to wrap around, addressed by (x, y) with x the column and y the row.
+ * WindowEngine shows a window of one through the Engine interface.
+ */
+public interface Universe {
+
+    // Return true if the cell at (x, y) is alive
+    boolean isAlive(long x, long y);
+
+    // Make the cell at (x, y) alive or dead
+    void setAlive(long x, long y, boolean alive);
+
+    // Set every cell to dead and the generation back to 0
+    void clear();
+
+    // Advance the universe by the given number of generations
+    void advance(long generations);
+
+    // Return the rule the universe is advanced with, B3/S23 unless it was changed
+    Rule getRule();
+
+    // Change the rule. Throws IllegalArgumentException for rules with birth on 0, which would fill the whole plane.
+    void setRule(Rule rule);
+
+    // Return the number of generations the universe has been advanced
+    long getGeneration();
+
+    // Return the number of live cells
+    long getPopulation();
+
+    // Return the number of cells that were born or died in the last generation, or -1 if they are not counted
+    long getChangedCells();
+
+    // Return a 64 bit hash of the live cells, kept up to date as they change (see Engine.getHash)
+    long getHash();
+
+    // Tell the sink about every live cell, in no particular order
+    void forEachAlive(PatternReader.Sink sink);
+}
@@ -0,0 +1,52 @@
+/*
+ * A PackedEngine whose rows are stepped with the Vector API (jdk.incubator.vector), many words per instruction.
+ * The kernel is vector/VectorKernel.java, which is only compiled and loaded when the incubator module is there:
+ *
+ *   javac --add-modules jdk.incubator.vector -d . vector/VectorKernel.java
+ *   java --add-modules jdk.incubator.vector Headless --engine vector
+ *
+ * Without the module (or the compiled kernel) the engine steps with the scalar loop of PackedEngine instead, so
+ * "vector" works everywhere and the result is identical either way.
+ */
+public class VectorEngine extends PackedEngine {
+
+    // Steps rows the way PackedEngine.stepRows does, leaving the same next words, count and rowHashes
+    interface Kernel {
+        long stepRows(VectorEngine engine, int from, int to);
+
+        int getLanes();   // Words computed per instruction
+    }
+
+    private static final Kernel KERNEL = loadKernel();   // null if the Vector API is not available
+
+
+    public VectorEngine(int rows, int columns) {
+        super(rows, columns);
+    }
+
+    // Return true if the Vector API kernel is in use, false if stepping falls back to the scalar loop
+    public static boolean isVectorised() {
+        return KERNEL != null;
+    }
+
+    // A line saying how the engine steps, for reports
+    public static String describe() {
+        return KERNEL != null ? "Vector API, " + KERNEL.getLanes() + " words per instruction"
+                : "scalar (run with --add-modules jdk.incubator.vector and compile vector/VectorKernel.java)";
+    }
+
+    protected long stepRows(int from, int to) {
+        if (KERNEL == null)
+            return super.stepRows(from, to);
+        return KERNEL.stepRows(this, from, to);
+    }
+
+
+    private static Kernel loadKernel() {
+        try {
+            return (Kernel) Class.forName("VectorKernel").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;   // Not compiled, or the jdk.incubator.vector module was not added
+        }
+    }
+}
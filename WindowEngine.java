@@ -0,0 +1,94 @@
+/*
+ * Shows a rows by columns window of an unbounded Universe through the Engine interface, so Board can
+ * display and edit it like any other board. The window's edges do not wrap: the pattern carries on outside it.
+ * Row r, column c of the window is the cell (left + c, top + r) of the universe, and the window starts centred
+ * on (0, 0).
+ */
+public class WindowEngine implements Engine {
+
+    private final Universe universe;  // The cells, including those outside the window
+    private final int rows;           // The number of rows in the window
+    private final int columns;        // The number of columns in the window
+    private long left;                // x of the first column of the window
+    private long top;                 // y of the first row of the window
+
+
+    public WindowEngine(Universe universe, int rows, int columns) {
+        this.universe = universe;
+        this.rows = rows;
+        this.columns = columns;
+        left = -(columns / 2);
+        top = -(rows / 2);
+    }
+
+    public Universe getUniverse() {
+        return universe;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public boolean isAlive(int row, int col) {
+        return universe.isAlive(left + col, top + row);
+    }
+
+    public void setAlive(int row, int col, boolean alive) {
+        universe.setAlive(left + col, top + row, alive);
+    }
+
+    public void clear() {
+        universe.clear();
+    }
+
+    public void step() {
+        universe.advance(1);
+    }
+
+    // Advance the universe by the given number of generations at once, which HashLife does in far fewer than that many steps
+    public void advance(long generations) {
+        universe.advance(generations);
+    }
+
+    public Rule getRule() {
+        return universe.getRule();
+    }
+
+    public void setRule(Rule rule) {
+        universe.setRule(rule);
+    }
+
+    // The population of the whole universe, not just the window
+    public long getPopulation() {
+        return universe.getPopulation();
+    }
+
+    public long getChangedCells() {
+        return universe.getChangedCells();
+    }
+
+    // The hash of the whole universe, so moving the window does not change it
+    public long getHash() {
+        return universe.getHash();
+    }
+
+    // Return x of the first column of the window
+    public long getLeft() {
+        return left;
+    }
+
+    // Return y of the first row of the window
+    public long getTop() {
+        return top;
+    }
+
+    // Move the window so its first column and row are the cell (left, top) of the universe
+    public void setOrigin(long left, long top) {
+        this.left = left;
+        this.top = top;
+    }
+}
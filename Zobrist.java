@@ -0,0 +1,63 @@
+/*
+ * Hashing of boards, used to spot a board that has been seen before (see CycleDetector).
+ * The hash of a board is combined from keys of its parts, so it can be kept up to date as parts change without
+ * reading the rest of the board, which is the idea of Zobrist hashing. Two schemes are used:
+ *
+ *   - Engines that change cells one at a time XOR together a random key for every live cell (cell), so a cell that
+ *     flips XORs its key in or out.
+ *   - The packed engines rewrite every word each step, and nearly every word changes while a random board
+ *     settles, so hashing a word must cost little more than a multiply. The hash of a packed board is
+ *         the sum over rows r and words w of  key(r) * key(w) * spread(word)   (mod 2^64)
+ *     The sum of each row without its row key is kept, and recomputed as the row is written, so the hash changes
+ *     by the difference times the row key. spread mixes the high bits of a word into the low ones; without it
+ *     a difference in the top bit of words would only reach the top bit of the hash.
+ *
+ * An empty board hashes to 0 in both schemes.
+ */
+final class Zobrist {
+
+    private Zobrist() {
+    }
+
+    // The key of a single live cell at position, for boards that are hashed a cell at a time
+    static long cell(long position) {
+        return mix(position + 0x9E3779B97F4A7C15L);
+    }
+
+    // An odd random key for row or word index of a packed board
+    static long key(long index) {
+        return mix(index + 0x9E3779B97F4A7C15L) | 1L;
+    }
+
+    // A bijection of words that carries a difference in their high bits down into the low bits, with spread(0) == 0
+    static long spread(long word) {
+        word ^= word >>> 29;
+        return word ^ (word >>> 43);
+    }
+
+    // The keys of a packed board's rows (or words), see key
+    static long[] keys(int count) {
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++)
+            keys[i] = key(i);
+        return keys;
+    }
+
+    // The hash of the row of a packed board starting at packed[row], without its row key
+    static long row(long[] packed, int row, int words, long[] columnKeys) {
+        long hash = 0;
+        for (int w = 0; w < words; w++)
+            hash += spread(packed[row + w]) * columnKeys[w];
+        return hash;
+    }
+
+    // A bijective mix of the bits of x, with mix(0) == 0 (the MurmurHash3 finaliser)
+    static long mix(long x) {
+        x ^= x >>> 33;
+        x *= 0xFF51AFD7ED558CCDL;
+        x ^= x >>> 33;
+        x *= 0xC4CEB9FE1A85EC53L;
+        x ^= x >>> 33;
+        return x;
+    }
+}
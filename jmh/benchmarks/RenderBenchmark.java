@@ -0,0 +1,46 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Frames per second of Panel showing a board in an 800 by 800 view, alternating between two generations so every
+ * frame has cells that changed. Runs headless, so it needs no display.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xmx4g", "-Djava.awt.headless=true"})
+public class RenderBenchmark {
+
+    @Param({"100", "1024", "4096", "8192", "16384"})
+    public int size;
+
+    @Param({"0.10", "0.35"})
+    public double density;
+
+    private Runnable render;
+
+
+    @Setup
+    public void setUp() throws Exception {
+        render = (Runnable) Cases.call("renderCase", size, density);
+    }
+
+    @Benchmark
+    public void render() {
+        render.run();   // Writes the pixels of the panel's image, so the JIT compiler can not leave it out
+    }
+}
@@ -0,0 +1,53 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Generations per second of each engine, size, density and rule. Every fork starts from the same random board;
+ * the board is stepped on from iteration to iteration, as it is in a real run. The forks add the incubating Vector
+ * API module, so "vector" runs its kernel; setting up fails rather than measuring packed again if it can not.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xmx4g", "--add-modules=jdk.incubator.vector"})  // The vector engine needs the module
+public class StepBenchmark {
+
+    @Param({"naive", "packed", "parallel", "active", "vector"})
+    public String engine;
+
+    @Param({"100", "1024", "4096", "8192", "16384"})
+    public int size;
+
+    @Param({"0.10", "0.35"})
+    public double density;
+
+    @Param({"B3/S23", "B36/S23"})
+    public String rule;
+
+    private Runnable step;
+
+
+    @Setup
+    public void setUp() throws Exception {
+        step = (Runnable) Cases.call("stepCase", engine, rule, size, density);
+    }
+
+    @Benchmark
+    public void step() {
+        step.run();   // Changes the board, so the JIT compiler can not leave it out
+    }
+}
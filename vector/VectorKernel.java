@@ -0,0 +1,142 @@
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * The Vector API kernel of VectorEngine: the adders and rule of PackedEngine.stepWord, on as many words at once as
+ * the widest vectors of the machine hold (4 with AVX2, 8 with AVX-512), so it is written without knowing the width.
+ *
+ * The west and east neighbours of a vector of words come from two more loads, one word to the left and one to the
+ * right, whose top and bottom bits are the carries across words. The first and last word of a row wrap around the
+ * board, so they (and words left over at the end of a row) are stepped with the scalar stepWord.
+ * Changed cells and the row hash are added up in vector lanes too, and reduced once per row.
+ *
+ * The whole loop is written out in stepRows with no helper methods taking vectors: each vector operation is many
+ * nodes to the JIT compiler, which stops inlining calls once a method has grown that big, and a vector passed to a
+ * call that was not inlined has to be boxed on the heap.
+ *
+ * Compile separately, with: javac --add-modules jdk.incubator.vector -d . vector/VectorKernel.java
+ * (the Maven build compiles it with the rest, for the JMH benchmarks).
+ */
+public class VectorKernel implements VectorEngine.Kernel {
+
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+    private static final VectorOperators.Associative XOR = VectorOperators.XOR;
+    private static final VectorOperators.Binary LSHL = VectorOperators.LSHL;
+    private static final VectorOperators.Binary LSHR = VectorOperators.LSHR;
+
+
+    public int getLanes() {
+        return SPECIES.length();
+    }
+
+    public long stepRows(VectorEngine engine, int from, int to) {
+        long[] src = engine.cells;
+        long[] dst = engine.next;
+        long[] columnKeys = engine.columnKeys;
+        int rows = engine.rows, columns = engine.columns, words = engine.words;
+        Rule rule = engine.rule;
+        int lanes = SPECIES.length();
+        // The masks of Rule.apply: bn is all ones if a dead cell with n neighbours is born, dn if birth and survival differ for n
+        long b0 = mask(rule, false, 0), b1 = mask(rule, false, 1), b2 = mask(rule, false, 2);
+        long b3 = mask(rule, false, 3), b4 = mask(rule, false, 4), b5 = mask(rule, false, 5);
+        long b6 = mask(rule, false, 6), b7 = mask(rule, false, 7), b8 = mask(rule, false, 8);
+        long d0 = b0 ^ mask(rule, true, 0), d1 = b1 ^ mask(rule, true, 1), d2 = b2 ^ mask(rule, true, 2);
+        long d3 = b3 ^ mask(rule, true, 3), d4 = b4 ^ mask(rule, true, 4), d5 = b5 ^ mask(rule, true, 5);
+        long d6 = b6 ^ mask(rule, true, 6), d7 = b7 ^ mask(rule, true, 7), d8 = b8 ^ mask(rule, true, 8);
+        boolean conway = rule.isConway();   // B3/S23 takes the shorter circuit of stepWord instead
+
+        long changed = 0;
+        for (int r = from; r < to; r++) {
+            // The grid wraps around, so the row above the first row is the last row and the row below the last row is the first row
+            int above = (r > 0 ? r - 1 : rows - 1) * words;
+            int below = (r < rows - 1 ? r + 1 : 0) * words;
+            int row = r * words;
+            long sum = 0;
+
+            long first = PackedEngine.stepWord(src, above, row, below, 0, words, columns, rule);
+            changed += Long.bitCount(first ^ src[row]);
+            sum += Zobrist.spread(first) * columnKeys[0];
+            dst[row] = first;
+
+            // Whole vectors of words that neither wrap around nor hold the last column
+            LongVector counts = LongVector.zero(SPECIES);
+            LongVector sums = LongVector.zero(SPECIES);
+            int w = 1;
+            for (; w + lanes < words; w += lanes) {
+                // Each row shifted west and east, carrying in the neighbouring bit of the word to the left or right
+                LongVector a = LongVector.fromArray(SPECIES, src, above + w);
+                LongVector aw = a.lanewise(LSHL, 1).or(LongVector.fromArray(SPECIES, src, above + w - 1).lanewise(LSHR, 63));
+                LongVector ae = a.lanewise(LSHR, 1).or(LongVector.fromArray(SPECIES, src, above + w + 1).lanewise(LSHL, 63));
+                LongVector m = LongVector.fromArray(SPECIES, src, row + w);
+                LongVector mw = m.lanewise(LSHL, 1).or(LongVector.fromArray(SPECIES, src, row + w - 1).lanewise(LSHR, 63));
+                LongVector me = m.lanewise(LSHR, 1).or(LongVector.fromArray(SPECIES, src, row + w + 1).lanewise(LSHL, 63));
+                LongVector c = LongVector.fromArray(SPECIES, src, below + w);
+                LongVector cw = c.lanewise(LSHL, 1).or(LongVector.fromArray(SPECIES, src, below + w - 1).lanewise(LSHR, 63));
+                LongVector ce = c.lanewise(LSHR, 1).or(LongVector.fromArray(SPECIES, src, below + w + 1).lanewise(LSHL, 63));
+
+                // The same adders as stepWord: three cells above, three below, left and right
+                LongVector sa = aw.lanewise(XOR, a).lanewise(XOR, ae);
+                LongVector ca = aw.and(a).or(ae.and(aw.lanewise(XOR, a)));
+                LongVector sb = cw.lanewise(XOR, c).lanewise(XOR, ce);
+                LongVector cb = cw.and(c).or(ce.and(cw.lanewise(XOR, c)));
+                LongVector sm = mw.lanewise(XOR, me);
+                LongVector cm = mw.and(me);
+
+                LongVector ones = sa.lanewise(XOR, sb).lanewise(XOR, sm);
+                LongVector c1 = sa.and(sb).or(sm.and(sa.lanewise(XOR, sb)));
+                LongVector t = ca.lanewise(XOR, cb).lanewise(XOR, cm);
+                LongVector t4 = ca.and(cb).or(cm.and(ca.lanewise(XOR, cb)));
+                LongVector twos = t.lanewise(XOR, c1);
+                LongVector c2 = t.and(c1);
+                LongVector fours = t4.lanewise(XOR, c2);
+                LongVector eights = t4.and(c2);
+
+                LongVector result;
+                if (conway) {
+                    result = twos.and(ones.or(m)).and(fours.or(eights).not());
+                } else {
+                    // Rule.apply: select each cell's entry of the rule by the bits of its neighbour count
+                    LongVector e01 = m.and(d0).lanewise(XOR, b0).bitwiseBlend(m.and(d1).lanewise(XOR, b1), ones);
+                    LongVector e23 = m.and(d2).lanewise(XOR, b2).bitwiseBlend(m.and(d3).lanewise(XOR, b3), ones);
+                    LongVector e45 = m.and(d4).lanewise(XOR, b4).bitwiseBlend(m.and(d5).lanewise(XOR, b5), ones);
+                    LongVector e67 = m.and(d6).lanewise(XOR, b6).bitwiseBlend(m.and(d7).lanewise(XOR, b7), ones);
+                    LongVector e07 = e01.bitwiseBlend(e23, twos).bitwiseBlend(e45.bitwiseBlend(e67, twos), fours);
+                    result = e07.bitwiseBlend(m.and(d8).lanewise(XOR, b8), eights);
+                }
+                result.intoArray(dst, row + w);
+
+                // Count the cells that changed, adding neighbouring bits, then pairs, then nibbles and so on
+                LongVector x = result.lanewise(XOR, m);
+                x = x.sub(x.lanewise(LSHR, 1).and(0x5555555555555555L));
+                x = x.and(0x3333333333333333L).add(x.lanewise(LSHR, 2).and(0x3333333333333333L));
+                x = x.add(x.lanewise(LSHR, 4)).and(0x0F0F0F0F0F0F0F0FL);
+                x = x.add(x.lanewise(LSHR, 8));
+                x = x.add(x.lanewise(LSHR, 16));
+                counts = counts.add(x.add(x.lanewise(LSHR, 32)).and(0x7FL));
+
+                // Zobrist.spread of each word, times the key of its column
+                LongVector spread = result.lanewise(XOR, result.lanewise(LSHR, 29));
+                spread = spread.lanewise(XOR, spread.lanewise(LSHR, 43));
+                sums = sums.add(spread.mul(LongVector.fromArray(SPECIES, columnKeys, w)));
+            }
+            changed += counts.reduceLanes(VectorOperators.ADD);
+            sum += sums.reduceLanes(VectorOperators.ADD);
+
+            for (; w < words; w++) {
+                long word = PackedEngine.stepWord(src, above, row, below, w, words, columns, rule);
+                changed += Long.bitCount(word ^ src[row + w]);
+                sum += Zobrist.spread(word) * columnKeys[w];
+                dst[row + w] = word;
+            }
+            engine.rowHashes[r] = (sum - engine.rowSums[r]) * engine.rowKeys[r];  // As in PackedEngine.stepRows
+            engine.rowSums[r] = sum;
+        }
+        return changed;
+    }
+
+    // All ones if a cell that is alive (or not) with n live neighbours is alive next generation
+    private static long mask(Rule rule, boolean alive, int n) {
+        return rule.next(alive, n) ? -1L : 0L;
+    }
+}